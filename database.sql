@@ -0,0 +1,67 @@
+-- v0.0.2 注册依赖唯一索引判断账号、昵称是否重复
+-- 旧版本未设置账号时保存为空串，改为NULL，唯一索引允许多个NULL
+UPDATE acc_user SET account = NULL WHERE account = '';
+ALTER TABLE acc_user ADD UNIQUE INDEX uk_acc_user_account (account);
+ALTER TABLE acc_user ADD UNIQUE INDEX uk_acc_user_nickname (nickname);
+
+-- v0.0.2 用户ID号段分配，替代每次注册调用 FUN_SEQ
+CREATE TABLE acc_sequence (
+  seq_name VARCHAR(50) NOT NULL PRIMARY KEY,
+  current_value BIGINT NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+-- 从原序列当前值之后开始，避免与已分配的ID重复
+INSERT INTO acc_sequence (seq_name, current_value)
+SELECT 'acc_user_id_seq', GREATEST(FUN_SEQ('acc_user_id_seq'), IFNULL(MAX(user_id), 0)) FROM acc_user;
+
+DELIMITER $$
+CREATE FUNCTION FUN_SEQ_LEASE (seq VARCHAR(50), step INT) RETURNS BIGINT
+BEGIN
+  DECLARE v BIGINT;
+  UPDATE acc_sequence SET current_value = current_value + step WHERE seq_name = seq;
+  SELECT current_value INTO v FROM acc_sequence WHERE seq_name = seq;
+  RETURN v;
+END $$
+DELIMITER ;
+
+-- v0.0.2 登入次数汇总，每个时间段每个账号一行
+CREATE TABLE acc_user_login_stat (
+  bucket_time DATETIME NOT NULL,
+  account VARCHAR(50) NOT NULL,
+  user_id BIGINT NULL,
+  success_count BIGINT NOT NULL DEFAULT 0,
+  failure_count BIGINT NOT NULL DEFAULT 0,
+  PRIMARY KEY (bucket_time, account),
+  KEY idx_acc_login_stat_account (account, bucket_time),
+  KEY idx_acc_login_stat_user (user_id, bucket_time)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+-- v0.0.2 登入日志按月分区，created范围查询只扫描相关分区
+-- 分区键必须包含在主键中；分区名 pyyyyMM 保存 created 早于下月1日的数据
+-- 后续分区由 LoginRetentionJob 维护（acc.audit.partition.manage，默认开启），pmax中已有数据时不拆分，
+-- 所以必须在下月结束前开启，否则新数据进入pmax后只能人工调整分区
+ALTER TABLE acc_user_login MODIFY created TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP;
+ALTER TABLE acc_user_login DROP PRIMARY KEY, ADD PRIMARY KEY (no, created);
+ALTER TABLE acc_user_login ADD KEY idx_acc_user_login_created (created);
+ALTER TABLE acc_user_login ADD KEY idx_acc_user_login_account (account, created);
+-- 起始分区按执行月份生成：上月分区保存此前的全部数据，再建本月、下月，pmax为空
+SET @m0 = DATE_FORMAT(CURDATE(), '%Y-%m-01');
+SET @m1 = DATE_FORMAT(@m0 + INTERVAL 1 MONTH, '%Y-%m-01');
+SET @m2 = DATE_FORMAT(@m0 + INTERVAL 2 MONTH, '%Y-%m-01');
+SET @ddl = CONCAT('ALTER TABLE acc_user_login PARTITION BY RANGE (UNIX_TIMESTAMP(created)) (',
+  'PARTITION p', DATE_FORMAT(@m0 - INTERVAL 1 MONTH, '%Y%m'), ' VALUES LESS THAN (UNIX_TIMESTAMP(''', @m0, ''')), ',
+  'PARTITION p', DATE_FORMAT(@m0, '%Y%m'), ' VALUES LESS THAN (UNIX_TIMESTAMP(''', @m1, ''')), ',
+  'PARTITION p', DATE_FORMAT(@m1, '%Y%m'), ' VALUES LESS THAN (UNIX_TIMESTAMP(''', @m2, ''')), ',
+  'PARTITION pmax VALUES LESS THAN MAXVALUE)');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- v0.0.2 用户列表按(created, user_id)游标分页，二级索引隐含主键user_id
+ALTER TABLE acc_user ADD KEY idx_acc_user_created (created);
+
+-- v0.0.2 增量同步按(updated, user_id)水位读取
+ALTER TABLE acc_user ADD KEY idx_acc_user_updated (updated);
+
+-- v0.0.2 密码改为带格式标识的PBKDF2散列，旧的MD5散列登入时升级
+ALTER TABLE acc_user MODIFY password VARCHAR(128);
@@ -0,0 +1,21 @@
+#!/bin/sh
+
+# 用户批量导入
+# 用法：import.sh users.csv [rejects.csv]
+
+# 不切换当前目录，文件参数可以使用相对路径
+[ -z "$APP_HOME" ] && APP_HOME=`cd "\`dirname "$0"\`/.." && pwd`
+
+if [ -r "$APP_HOME/bin/setenv.sh" ]; then
+  . "$APP_HOME/bin/setenv.sh"
+fi
+
+CLASSPATH="$APP_HOME/config"
+for i in "$APP_HOME"/lib/*.jar; do
+  CLASSPATH="$CLASSPATH":"$i"
+done
+
+JAVA="java"
+[ -n "$JAVA_HOME" ] && JAVA="$JAVA_HOME/bin/java"
+
+exec "$JAVA" $JAVA_OPTS -classpath "$CLASSPATH" cn.songm.acc.UserImportApp "$@"
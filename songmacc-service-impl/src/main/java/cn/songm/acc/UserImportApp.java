@@ -0,0 +1,32 @@
+package cn.songm.acc;
+
+import java.io.IOException;
+
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import cn.songm.acc.imports.UserImporter;
+
+/**
+ * 用户批量导入
+ * 
+ * 用法：UserImportApp users.csv [rejects.csv]
+ * 
+ * @author zhangsong
+ *
+ */
+public class UserImportApp {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: UserImportApp <users.csv> [rejects.csv]");
+            System.exit(1);
+        }
+        ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext("app-acc-import.xml");
+        try {
+            UserImporter importer = context.getBean(UserImporter.class);
+            System.out.println(importer.importFromFile(args[0], args.length > 1 ? args[1] : null));
+        } finally {
+            context.close();
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package cn.songm.acc.aspect;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import cn.songm.acc.metrics.LatencyStats;
+import cn.songm.common.service.ServiceException;
+
+/**
+ * 业务方法监控
+ *
+ * 按方法记录调用次数、异常次数和纳秒级耗时分布，通过JMX查看。
+ * 正常调用只做一次Map查找和一次无锁记录，不拼接字符串、不创建对象。
+ * 参数和返回值按采样率在DEBUG级别输出，敏感参数（密码、验证码等）以***代替。
+ * 业务异常（ServiceException）只计数，其它异常输出ERROR日志。
+ *
+ * @author zhangsong
+ *
+ */
+@Component("serviceMetrics")
+@ManagedResource(objectName = "cn.songm.acc:type=Metrics,name=serviceMetrics")
+public class ServiceMetricsInterceptor implements MethodInterceptor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ServiceMetricsInterceptor.class);
+
+    /** 每多少次调用输出一次参数和返回值，0为不输出 */
+    @Value("${acc.trace.sample:100}")
+    private int sample;
+    /** 需要遮盖的参数名 */
+    @Value("${acc.trace.mask:password,oldPsw,newPsw,vcode}")
+    private String mask;
+    /** 统计周期（秒） */
+    @Value("${acc.metrics.interval:60}")
+    private long interval;
+
+    private final ParameterNameDiscoverer parameterNames = new DefaultParameterNameDiscoverer();
+    private final ConcurrentMap<Method, MethodStats> methods = new ConcurrentHashMap<Method, MethodStats>();
+    private Set<String> masked;
+    private ScheduledExecutorService roller;
+
+    @PostConstruct
+    public void init() {
+        masked = new HashSet<String>(Arrays.asList(mask.trim().split("\\s*,\\s*")));
+        roller = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "service-metrics");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        roller.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                for (MethodStats m : methods.values()) {
+                    m.stats.roll();
+                }
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        roller.shutdownNow();
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        MethodStats m = methods.get(invocation.getMethod());
+        if (m == null) {
+            m = register(invocation);
+        }
+        boolean trace = sample > 0 && LOG.isDebugEnabled()
+                && ThreadLocalRandom.current().nextInt(sample) == 0;
+        boolean error = false;
+        long start = System.nanoTime();
+        try {
+            Object result = invocation.proceed();
+            if (trace) {
+                LOG.debug("{} args: {} return: {} ({} us)", m.stats.getName(), m.format(invocation.getArguments()),
+                        result, (System.nanoTime() - start) / 1000L);
+            }
+            return result;
+        } catch (ServiceException e) {
+            error = true;
+            if (trace) {
+                LOG.debug("{} args: {} error: {} {}", m.stats.getName(), m.format(invocation.getArguments()),
+                        e.getErrCode(), e.getErrDesc());
+            }
+            throw e;
+        } catch (Throwable e) {
+            error = true;
+            LOG.error(m.stats.getName() + " args: " + m.format(invocation.getArguments()), e);
+            throw e;
+        } finally {
+            m.stats.record(System.nanoTime() - start, error);
+        }
+    }
+
+    private MethodStats register(MethodInvocation invocation) {
+        Method method = invocation.getMethod();
+        Class<?> targetClass = invocation.getThis() == null ? method.getDeclaringClass()
+                : AopUtils.getTargetClass(invocation.getThis());
+        // 接口方法没有参数名，从实现类的方法读取
+        Method impl = AopUtils.getMostSpecificMethod(method, targetClass);
+        String[] names = parameterNames.getParameterNames(impl);
+        boolean[] secret = new boolean[method.getParameterTypes().length];
+        for (int i = 0; i < secret.length; i++) {
+            // 读不到参数名时全部遮盖
+            secret[i] = names == null || masked.contains(names[i]);
+        }
+        MethodStats m = new MethodStats(
+                new LatencyStats(targetClass.getSimpleName() + "." + method.getName()), secret);
+        MethodStats old = methods.putIfAbsent(method, m);
+        return old == null ? m : old;
+    }
+
+    private List<LatencyStats> sorted() {
+        List<LatencyStats> list = new ArrayList<LatencyStats>();
+        for (MethodStats m : methods.values()) {
+            list.add(m.stats);
+        }
+        list.sort(new Comparator<LatencyStats>() {
+            @Override
+            public int compare(LatencyStats a, LatencyStats b) {
+                return a.getName().compareTo(b.getName());
+            }
+        });
+        return list;
+    }
+
+    @ManagedOperation(description = "上一统计周期各方法的调用次数和耗时分位数")
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        LatencyStats.appendHeader(sb);
+        for (LatencyStats s : sorted()) {
+            s.appendTo(sb, s.getLast());
+        }
+        return sb.toString();
+    }
+
+    @ManagedOperation(description = "启动以来各方法的调用次数和耗时分位数（不含当前周期）")
+    public String reportTotal() {
+        StringBuilder sb = new StringBuilder();
+        LatencyStats.appendHeader(sb);
+        for (LatencyStats s : sorted()) {
+            s.appendTo(sb, s.getTotal());
+        }
+        return sb.toString();
+    }
+
+    @ManagedAttribute(description = "调用总次数")
+    public long getCallCount() {
+        long n = 0;
+        for (MethodStats m : methods.values()) {
+            n += m.stats.getCalls();
+        }
+        return n;
+    }
+
+    @ManagedAttribute(description = "异常总次数")
+    public long getErrorCount() {
+        long n = 0;
+        for (MethodStats m : methods.values()) {
+            n += m.stats.getErrors();
+        }
+        return n;
+    }
+
+    @ManagedAttribute(description = "参数输出采样间隔")
+    public int getSample() {
+        return sample;
+    }
+
+    @ManagedAttribute(description = "参数输出采样间隔，0为不输出")
+    public void setSample(int sample) {
+        this.sample = Math.max(0, sample);
+    }
+
+    /**
+     * 一个方法的统计和需要遮盖的参数位置
+     */
+    private static class MethodStats {
+        final LatencyStats stats;
+        final boolean[] secret;
+
+        MethodStats(LatencyStats stats, boolean[] secret) {
+            this.stats = stats;
+            this.secret = secret;
+        }
+
+        String format(Object[] args) {
+            StringBuilder sb = new StringBuilder("[");
+            for (int i = 0; i < args.length; i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append(i < secret.length && secret[i] && args[i] != null ? "***" : String.valueOf(args[i]));
+            }
+            return sb.append(']').toString();
+        }
+    }
+}
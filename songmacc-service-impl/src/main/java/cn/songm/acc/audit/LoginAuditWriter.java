@@ -0,0 +1,254 @@
+package cn.songm.acc.audit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import cn.songm.acc.dao.UserLoginDao;
+import cn.songm.acc.entity.UserLogin;
+
+/**
+ * 登入日志异步写入
+ *
+ * 登入事件放入有界队列后立即返回，由后台线程按批量大小或时间间隔批量写入acc_user_login。
+ * 队列已满时丢弃新事件（不阻塞登入），并计入丢弃次数。
+ * 批量写入失败时逐条重试，只丢弃无法写入的事件并计数；账号未经校验，超出列长度的截断。
+ *
+ * @author zhangsong
+ *
+ */
+@Component("loginAuditWriter")
+@ManagedResource(objectName = "cn.songm.acc:type=Audit,name=loginAuditWriter")
+public class LoginAuditWriter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LoginAuditWriter.class);
+
+    /** 账号最大长度，与acc_user_login.account列一致 */
+    private static final int MAX_ACCOUNT = 50;
+    /** 逐条重试时开头连续失败这么多条，视为数据库不可用，其余不再重试 */
+    private static final int MAX_PROBES = 10;
+
+    @Autowired
+    private UserLoginDao userLoginDao;
+
+    /** 队列容量 */
+    @Value("${acc.audit.login.capacity:10000}")
+    private int capacity;
+    /** 每批写入的最大条数 */
+    @Value("${acc.audit.login.batchSize:200}")
+    private int batchSize;
+    /** 最长写入间隔（毫秒） */
+    @Value("${acc.audit.login.interval:1000}")
+    private long interval;
+    /** 是否逐条记录，关闭时只保留汇总（LoginRollup） */
+    @Value("${acc.audit.login.raw:true}")
+    private boolean raw = true;
+
+    private BlockingQueue<UserLogin> queue;
+    private Thread writer;
+    private volatile boolean running;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        queue = new ArrayBlockingQueue<UserLogin>(capacity);
+        running = true;
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "login-audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * 停止接收事件，写完队列中剩余的事件
+     */
+    @PreDestroy
+    public void destroy() {
+        running = false;
+        writer.interrupt();
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 记录一次登入
+     * @param account 登入使用的账号
+     * @param userId 用户ID，账号不存在时为null
+     * @param success 是否登入成功
+     */
+    public void record(String account, Long userId, boolean success) {
+        if (!raw) {
+            return;
+        }
+        if (!running) {
+            dropped.increment();
+            return;
+        }
+        Date now = new Date();
+        UserLogin login = new UserLogin();
+        login.setNo(UUID.randomUUID().toString().replace("-", ""));
+        login.setVersion(0);
+        login.setCreated(now);
+        login.setUpdated(now);
+        login.setAccount(truncate(account));
+        login.setUserId(userId);
+        login.setLtime(now);
+        login.setLflag(success);
+        if (queue.offer(login)) {
+            accepted.increment();
+        } else {
+            dropped.increment();
+        }
+    }
+
+    private static String truncate(String account) {
+        if (account == null || account.codePointCount(0, account.length()) <= MAX_ACCOUNT) {
+            return account;
+        }
+        return account.substring(0, account.offsetByCodePoints(0, MAX_ACCOUNT));
+    }
+
+    private void drain() {
+        List<UserLogin> batch = new ArrayList<UserLogin>(batchSize);
+        while (running) {
+            try {
+                UserLogin first = queue.poll(interval, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // 凑满一批或到达间隔再写
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(interval);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remain = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remain <= 0) {
+                        break;
+                    }
+                    UserLogin next = queue.poll(remain, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // 关闭，写完剩余事件后退出
+                break;
+            }
+            flush(batch);
+        }
+        while (true) {
+            queue.drainTo(batch, batchSize - batch.size());
+            if (batch.isEmpty()) {
+                break;
+            }
+            flush(batch);
+        }
+    }
+
+    private void flush(List<UserLogin> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            userLoginDao.insertBatch(batch);
+            written.add(batch.size());
+            batches.increment();
+        } catch (RuntimeException e) {
+            LOG.warn("Write {} login records failed, retry one by one: {}", batch.size(), e.getMessage());
+            insertOneByOne(batch);
+        }
+        batch.clear();
+    }
+
+    /**
+     * 整批失败后逐条写入，一条无法写入的事件不影响同批的其它事件
+     */
+    private void insertOneByOne(List<UserLogin> batch) {
+        int errors = 0;
+        boolean ok = false;
+        for (int i = 0; i < batch.size(); i++) {
+            if (!ok && errors >= MAX_PROBES) {
+                failed.add(batch.size() - i);
+                LOG.error("Write login records failed, drop {} records", batch.size() - i);
+                return;
+            }
+            UserLogin login = batch.get(i);
+            try {
+                userLoginDao.insertBatch(Collections.singletonList(login));
+                written.increment();
+                ok = true;
+            } catch (RuntimeException e) {
+                errors++;
+                failed.increment();
+                LOG.error("Write login record failed: account={}, userId={}", login.getAccount(),
+                        login.getUserId(), e);
+            }
+        }
+    }
+
+    @ManagedAttribute(description = "队列容量")
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @ManagedAttribute(description = "队列中等待写入的条数")
+    public int getQueued() {
+        return queue.size();
+    }
+
+    @ManagedAttribute(description = "接收的事件数")
+    public long getAcceptedCount() {
+        return accepted.sum();
+    }
+
+    @ManagedAttribute(description = "队列满时丢弃的事件数")
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    @ManagedAttribute(description = "写入成功的条数")
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    @ManagedAttribute(description = "写入失败而丢弃的条数")
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    @ManagedAttribute(description = "平均每批写入条数")
+    public double getAvgBatchSize() {
+        long n = batches.sum();
+        return n == 0 ? 0D : (double) written.sum() / n;
+    }
+}
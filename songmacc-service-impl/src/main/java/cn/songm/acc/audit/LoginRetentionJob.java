@@ -0,0 +1,255 @@
+package cn.songm.acc.audit;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import cn.songm.acc.dao.UserLoginDao;
+
+/**
+ * 登入日志保留期清理
+ *
+ * acc_user_login按月分区（见database.sql）。开启分区管理时，提前建好后续月份的分区，
+ * 整月过期的分区直接删除；保留期边界所在月份的过期数据按小批量删除，每批之间暂停，避免长时间锁表。
+ * pmax中已有数据时拆分会在锁表状态下复制数据，此时不拆分，输出错误日志，由人工调整分区。
+ * 各节点都启动该任务，通过Redis锁保证同一时间只有一个节点执行。
+ *
+ * @author zhangsong
+ *
+ */
+@Component("loginRetentionJob")
+@ManagedResource(objectName = "cn.songm.acc:type=Audit,name=loginRetentionJob")
+public class LoginRetentionJob {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LoginRetentionJob.class);
+
+    private static final DateTimeFormatter PARTITION_FORMAT = DateTimeFormatter.ofPattern("'p'yyyyMM");
+    private static final String PARTITION_MAX = "pmax";
+
+    private static final String LOCK_KEY = "acc:lock:loginRetention";
+    private static final RedisScript<Long> LOCK = new DefaultRedisScript<Long>(
+            "if redis.call('SET', KEYS[1], ARGV[1], 'NX', 'EX', ARGV[2]) then return 1 end "
+            + "return 0", Long.class);
+    private static final RedisScript<Long> UNLOCK = new DefaultRedisScript<Long>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end "
+            + "return 0", Long.class);
+
+    @Autowired
+    private UserLoginDao userLoginDao;
+    /** 多节点互斥，为null时不加锁（单节点测试） */
+    @Resource(name = "verifyRedisTemplate")
+    private StringRedisTemplate verifyRedisTemplate;
+
+    /** 日志保留月数 */
+    @Value("${acc.audit.retention.months:6}")
+    private int months;
+    /** 每批删除条数 */
+    @Value("${acc.audit.retention.batchSize:1000}")
+    private int batchSize;
+    /** 两批之间暂停（毫秒） */
+    @Value("${acc.audit.retention.pause:100}")
+    private long pause;
+    /** 执行间隔（小时） */
+    @Value("${acc.audit.retention.interval:24}")
+    private int interval;
+    /** 是否维护分区（需要ALTER权限），database.sql只建了起始的几个分区，表未分区时才关闭 */
+    @Value("${acc.audit.partition.manage:true}")
+    private boolean managePartitions;
+    /** 提前创建的分区月数 */
+    @Value("${acc.audit.partition.ahead:2}")
+    private int ahead;
+
+    private ScheduledExecutorService scheduler;
+    private volatile boolean running;
+    /** 锁的持有者标识 */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final LongAdder deletedRows = new LongAdder();
+    private final LongAdder droppedPartitions = new LongAdder();
+    private final AtomicLong lastRun = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        running = true;
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "login-retention");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    execute();
+                } catch (RuntimeException e) {
+                    LOG.error("Login retention failed", e);
+                }
+            }
+        }, 1, interval, TimeUnit.HOURS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        running = false;
+        scheduler.shutdownNow();
+    }
+
+    @ManagedOperation(description = "立即执行一次清理")
+    public synchronized void execute() {
+        if (!lock()) {
+            LOG.info("Login retention is running on another node, skip");
+            return;
+        }
+        try {
+            doExecute();
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * 锁在一个执行间隔后过期，持有的节点宕机时下一轮可由其它节点执行
+     */
+    private boolean lock() {
+        if (verifyRedisTemplate == null) {
+            return true;
+        }
+        Long r = verifyRedisTemplate.execute(LOCK, Collections.singletonList(LOCK_KEY),
+                nodeId, String.valueOf(TimeUnit.HOURS.toSeconds(interval)));
+        return r != null && r == 1L;
+    }
+
+    private void unlock() {
+        if (verifyRedisTemplate == null) {
+            return;
+        }
+        try {
+            verifyRedisTemplate.execute(UNLOCK, Collections.singletonList(LOCK_KEY), nodeId);
+        } catch (RuntimeException e) {
+            LOG.warn("Release login retention lock failed: {}", e.getMessage());
+        }
+    }
+
+    private void doExecute() {
+        LocalDate today = LocalDate.now();
+        LocalDate cutoff = today.minusMonths(months);
+        if (managePartitions) {
+            maintainPartitions(YearMonth.from(today), YearMonth.from(cutoff));
+        }
+        purge(Date.from(cutoff.atStartOfDay(ZoneId.systemDefault()).toInstant()));
+        lastRun.set(System.currentTimeMillis());
+    }
+
+    /**
+     * 创建后续月份的分区，删除整月早于保留期的分区
+     */
+    private void maintainPartitions(YearMonth current, YearMonth cutoff) {
+        List<String> partitions = userLoginDao.listPartitions();
+        if (partitions.isEmpty() || !partitions.contains(PARTITION_MAX)) {
+            LOG.warn("acc_user_login is not partitioned by month, skip partition maintenance");
+            return;
+        }
+        YearMonth last = null;
+        for (String name : partitions) {
+            if (PARTITION_MAX.equals(name)) {
+                continue;
+            }
+            YearMonth month = YearMonth.parse(name, PARTITION_FORMAT);
+            if (month.isBefore(cutoff)) {
+                userLoginDao.dropPartition(name);
+                droppedPartitions.increment();
+                LOG.info("Dropped login partition {}", name);
+            }
+            if (last == null || month.isAfter(last)) {
+                last = month;
+            }
+        }
+        YearMonth next = last == null ? current : last.plusMonths(1);
+        if (!next.isAfter(current.plusMonths(ahead))) {
+            // pmax保存next之后的数据，非空时REORGANIZE会复制并锁表
+            // 没有按月分区时整张表都在pmax中
+            Date from = last == null ? new Date(0)
+                    : Date.from(next.atDay(1).atStartOfDay(ZoneId.systemDefault()).toInstant());
+            if (userLoginDao.existsSince(from)) {
+                LOG.error("Partition {} of acc_user_login holds logins since {}, refuse to split it; "
+                        + "add partitions up to the current month by hand (see database.sql)", PARTITION_MAX, from);
+                return;
+            }
+        }
+        for (; !next.isAfter(current.plusMonths(ahead)); next = next.plusMonths(1)) {
+            String name = next.format(PARTITION_FORMAT);
+            userLoginDao.addPartition(name, next.plusMonths(1).atDay(1).toString());
+            LOG.info("Added login partition {}", name);
+        }
+    }
+
+    /**
+     * 小批量删除过期日志
+     */
+    private void purge(Date before) {
+        long total = 0;
+        while (running) {
+            int n = userLoginDao.deleteBefore(before, batchSize);
+            total += n;
+            deletedRows.add(n);
+            if (n < batchSize) {
+                break;
+            }
+            try {
+                Thread.sleep(pause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (total > 0) {
+            LOG.info("Deleted {} login records before {}", total, before);
+        }
+    }
+
+    @ManagedAttribute(description = "删除的日志条数")
+    public long getDeletedRows() {
+        return deletedRows.sum();
+    }
+
+    @ManagedAttribute(description = "删除的分区个数")
+    public long getDroppedPartitions() {
+        return droppedPartitions.sum();
+    }
+
+    @ManagedAttribute(description = "上次执行完成时间")
+    public Date getLastRun() {
+        long t = lastRun.get();
+        return t == 0 ? null : new Date(t);
+    }
+}
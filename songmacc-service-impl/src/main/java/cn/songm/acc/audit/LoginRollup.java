@@ -0,0 +1,368 @@
+package cn.songm.acc.audit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import cn.songm.acc.dao.UserLoginStatDao;
+import cn.songm.acc.entity.UserLoginStat;
+
+/**
+ * 登入次数汇总
+ *
+ * 按时间段和账号在内存中累计登入成功、失败次数（LongAdder），
+ * 定时累加写入acc_user_login_stat，每个时间段每个账号只有一行。
+ * 写入时先把计数器从Map中摘下并关闭，再读取计数；记录时持有计数器的读锁，
+ * 遇到已关闭的计数器重新取，计数不会在读取和清零之间丢失。
+ * 写入失败时逐行重试，失败的行放回内存，下次再写；数据库可用时仍连续失败多次的行丢弃，
+ * 避免一行无法写入的数据使整批计数永远写不进去。
+ * 账号由调用方传入、未经校验，超出列长度的截断；内存中的条目数有上限，超出时新账号的计数丢弃。
+ *
+ * @author zhangsong
+ *
+ */
+@Component("loginRollup")
+@ManagedResource(objectName = "cn.songm.acc:type=Audit,name=loginRollup")
+public class LoginRollup {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LoginRollup.class);
+
+    /** 每条INSERT最多的行数 */
+    private static final int MAX_ROWS = 500;
+    /** 账号最大长度，与acc_user_login_stat.account列一致 */
+    private static final int MAX_ACCOUNT = 50;
+    /** 一行在数据库可用时连续写入失败的次数达到该值后丢弃 */
+    private static final int MAX_ATTEMPTS = 3;
+    /** 逐行重试时开头连续失败这么多行，视为数据库不可用，不再逐行重试 */
+    private static final int MAX_PROBES = 10;
+
+    @Autowired
+    private UserLoginStatDao userLoginStatDao;
+
+    /** 时间段长度（秒） */
+    @Value("${acc.audit.rollup.bucket:60}")
+    private int bucket;
+    /** 写入间隔（秒） */
+    @Value("${acc.audit.rollup.interval:10}")
+    private int interval;
+    /** 内存中的最大条目数（时间段和账号的组合） */
+    @Value("${acc.audit.rollup.maxKeys:100000}")
+    private int maxKeys;
+
+    private final ConcurrentHashMap<Key, Counter> counters = new ConcurrentHashMap<Key, Counter>();
+    private ScheduledExecutorService scheduler;
+
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder rowsWritten = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+    private final LongAdder droppedRecords = new LongAdder();
+    private final LongAdder droppedRows = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "login-rollup");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private long bucketOf(long time) {
+        long millis = bucket * 1000L;
+        return time / millis * millis;
+    }
+
+    /**
+     * 记录一次登入
+     * @param account 登入使用的账号
+     * @param userId 用户ID，账号不存在时为null
+     * @param success 是否登入成功
+     */
+    public void record(String account, Long userId, boolean success) {
+        Key key = new Key(bucketOf(System.currentTimeMillis()), truncate(account));
+        // 账号由请求方决定，不限制条目数时随机账号可以耗尽内存
+        if (counters.size() >= maxKeys && !counters.containsKey(key)) {
+            droppedRecords.increment();
+            return;
+        }
+        add(key, userId, success ? 1 : 0, success ? 0 : 1, 0);
+        recorded.increment();
+    }
+
+    private static String truncate(String account) {
+        if (account == null) {
+            return "";
+        }
+        if (account.codePointCount(0, account.length()) <= MAX_ACCOUNT) {
+            return account;
+        }
+        return account.substring(0, account.offsetByCodePoints(0, MAX_ACCOUNT));
+    }
+
+    private void add(Key key, Long userId, long success, long failure, int attempts) {
+        // 计数器被flush摘下后不再接受计数，换新的计数器
+        while (!counter(key).add(userId, success, failure, attempts)) {
+        }
+    }
+
+    private Counter counter(Key key) {
+        Counter c = counters.get(key);
+        if (c == null) {
+            Counter n = new Counter();
+            c = counters.putIfAbsent(key, n);
+            if (c == null) {
+                c = n;
+            }
+        }
+        return c;
+    }
+
+    /**
+     * 把累计的计数写入数据库
+     */
+    @ManagedOperation(description = "立即写入累计的计数")
+    public synchronized void flush() {
+        List<Row> rows = new ArrayList<Row>();
+        for (Map.Entry<Key, Counter> e : counters.entrySet()) {
+            Key key = e.getKey();
+            Counter c = e.getValue();
+            // 先摘下再关闭，关闭后计数不再变化；当前时间段的计数器由下一次记录重新创建
+            if (!counters.remove(key, c)) {
+                continue;
+            }
+            c.close();
+            long success = c.success.sum();
+            long failure = c.failure.sum();
+            if (success == 0 && failure == 0) {
+                continue;
+            }
+            UserLoginStat stat = new UserLoginStat();
+            stat.setBucketTime(new Date(key.bucketTime));
+            stat.setAccount(key.account);
+            stat.setUserId(c.userId);
+            stat.setSuccessCount(success);
+            stat.setFailureCount(failure);
+            rows.add(new Row(stat, c.attempts));
+        }
+        for (int i = 0; i < rows.size(); i += MAX_ROWS) {
+            List<Row> part = rows.subList(i, Math.min(i + MAX_ROWS, rows.size()));
+            List<UserLoginStat> stats = new ArrayList<UserLoginStat>(part.size());
+            for (Row row : part) {
+                stats.add(row.stat);
+            }
+            try {
+                userLoginStatDao.upsertBatch(stats);
+                rowsWritten.add(part.size());
+            } catch (RuntimeException e) {
+                flushFailures.increment();
+                LOG.warn("Write {} login stat rows failed, retry one by one: {}", part.size(), e.getMessage());
+                writeOneByOne(part);
+            }
+        }
+    }
+
+    /**
+     * 整批失败后逐行写入，找出无法写入的行
+     *
+     * 有行写入成功说明数据库可用，其余失败的行各计一次失败；
+     * 开头连续多行失败的，视为数据库不可用，全部放回内存，不计失败。
+     */
+    private void writeOneByOne(List<Row> part) {
+        List<Row> failed = new ArrayList<Row>();
+        boolean written = false;
+        RuntimeException error = null;
+        for (int i = 0; i < part.size(); i++) {
+            if (!written && failed.size() >= MAX_PROBES) {
+                LOG.error("Write login stat rows failed, {} rows will retry", part.size(), error);
+                restore(failed, false);
+                restore(part.subList(i, part.size()), false);
+                return;
+            }
+            Row row = part.get(i);
+            try {
+                userLoginStatDao.upsertBatch(Collections.singletonList(row.stat));
+                rowsWritten.increment();
+                written = true;
+            } catch (RuntimeException e) {
+                failed.add(row);
+                error = e;
+            }
+        }
+        restore(failed, written);
+    }
+
+    private void restore(List<Row> rows, boolean countAttempt) {
+        for (Row row : rows) {
+            UserLoginStat stat = row.stat;
+            int attempts = countAttempt ? row.attempts + 1 : row.attempts;
+            if (attempts >= MAX_ATTEMPTS) {
+                droppedRows.increment();
+                LOG.error("Drop login stat row after {} attempts: bucket={}, account={}, success={}, failure={}",
+                        attempts, stat.getBucketTime(), stat.getAccount(), stat.getSuccessCount(),
+                        stat.getFailureCount());
+                continue;
+            }
+            add(new Key(stat.getBucketTime().getTime(), stat.getAccount()), stat.getUserId(),
+                    stat.getSuccessCount(), stat.getFailureCount(), attempts);
+        }
+    }
+
+    @ManagedAttribute(description = "记录的登入次数")
+    public long getRecordedCount() {
+        return recorded.sum();
+    }
+
+    @ManagedAttribute(description = "内存中的汇总条目数")
+    public int getPendingKeys() {
+        return counters.size();
+    }
+
+    @ManagedAttribute(description = "写入的汇总行数")
+    public long getRowsWritten() {
+        return rowsWritten.sum();
+    }
+
+    @ManagedAttribute(description = "写入失败次数")
+    public long getFlushFailures() {
+        return flushFailures.sum();
+    }
+
+    @ManagedAttribute(description = "条目数达到上限而丢弃的登入次数")
+    public long getDroppedRecords() {
+        return droppedRecords.sum();
+    }
+
+    @ManagedAttribute(description = "多次写入失败而丢弃的汇总行数")
+    public long getDroppedRows() {
+        return droppedRows.sum();
+    }
+
+    private static class Row {
+        final UserLoginStat stat;
+        /** 此前连续写入失败的次数 */
+        final int attempts;
+
+        Row(UserLoginStat stat, int attempts) {
+            this.stat = stat;
+            this.attempts = attempts;
+        }
+    }
+
+    private static class Key {
+        final long bucketTime;
+        final String account;
+
+        Key(long bucketTime, String account) {
+            this.bucketTime = bucketTime;
+            this.account = account;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(bucketTime) + account.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return bucketTime == other.bucketTime && account.equals(other.account);
+        }
+    }
+
+    private static class Counter {
+        volatile Long userId;
+        /** 写入失败后放回时带上的失败次数 */
+        volatile int attempts;
+        final LongAdder success = new LongAdder();
+        final LongAdder failure = new LongAdder();
+        /** 读锁由记录共享，写锁只在关闭时取一次 */
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private boolean closed;
+
+        /**
+         * @return false表示已关闭，计数未加入
+         */
+        boolean add(Long userId, long success, long failure, int attempts) {
+            Lock l = lock.readLock();
+            l.lock();
+            try {
+                if (closed) {
+                    return false;
+                }
+                if (userId != null) {
+                    this.userId = userId;
+                }
+                if (attempts > this.attempts) {
+                    this.attempts = attempts;
+                }
+                if (success != 0) {
+                    this.success.add(success);
+                }
+                if (failure != 0) {
+                    this.failure.add(failure);
+                }
+                return true;
+            } finally {
+                l.unlock();
+            }
+        }
+
+        /**
+         * 等待进行中的记录结束，之后计数不再变化
+         */
+        void close() {
+            Lock l = lock.writeLock();
+            l.lock();
+            try {
+                closed = true;
+            } finally {
+                l.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package cn.songm.acc.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 字符串布隆过滤器
+ *
+ * 判断为不存在时一定不存在，判断为可能存在时有一定误判率。
+ * 位数组用AtomicLongArray，添加和查询都不加锁，可被多个线程同时使用。
+ * 只能添加不能删除。
+ *
+ * @author zhangsong
+ *
+ */
+public final class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * @param expected 预计元素个数
+     * @param fpp 期望误判率，如0.01
+     */
+    public BloomFilter(long expected, double fpp) {
+        if (expected <= 0 || fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException();
+        }
+        long m = (long) Math.ceil(-expected * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min(Integer.MAX_VALUE, (m + 63) / 64);
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expected * Math.log(2)));
+    }
+
+    public void add(CharSequence s) {
+        long h = hash(s);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = index(h1 + i * h2);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long old;
+            while (((old = bits.get(word)) & mask) == 0) {
+                if (bits.compareAndSet(word, old, old | mask)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    public boolean mightContain(CharSequence s) {
+        long h = hash(s);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = index(h1 + i * h2);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long index(int combined) {
+        return (combined & 0x7FFFFFFFL) % bitCount;
+    }
+
+    /** 位数组占用的字节数 */
+    public long sizeInBytes() {
+        return bitCount / 8;
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    /**
+     * 64位FNV-1a，再做一次murmur3的finalizer混合
+     */
+    private static long hash(CharSequence s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,184 @@
+package cn.songm.acc.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 进程内缓存，限制条目数和有效时长
+ *
+ * 按key分段加锁，每段是一个按访问顺序排列的LinkedHashMap，超出容量时淘汰最久未访问的条目。
+ * 缓存的对象在调用方之间共享，只读使用。
+ *
+ * @author zhangsong
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class LocalCache<K, V> {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments;
+    private final long ttlNanos;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * @param maxSize
+     *            最大条目数
+     * @param ttl
+     *            有效时长
+     * @param unit
+     */
+    @SuppressWarnings("unchecked")
+    public LocalCache(int maxSize, long ttl, TimeUnit unit) {
+        if (maxSize <= 0 || ttl <= 0) {
+            throw new IllegalArgumentException();
+        }
+        int perSegment = Math.max(1, (maxSize + SEGMENTS - 1) / SEGMENTS);
+        this.segments = new LocalCache.Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+        this.ttlNanos = unit.toNanos(ttl);
+    }
+
+    private Segment segmentFor(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (SEGMENTS - 1)];
+    }
+
+    public V get(K key) {
+        Segment seg = segmentFor(key);
+        V value;
+        synchronized (seg) {
+            Item<V> item = seg.map.get(key);
+            if (item == null) {
+                value = null;
+            } else if (item.expireAt - System.nanoTime() <= 0) {
+                seg.map.remove(key);
+                expirations.increment();
+                value = null;
+            } else {
+                value = item.value;
+            }
+        }
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+
+    public void put(K key, V value) {
+        Segment seg = segmentFor(key);
+        Item<V> item = new Item<V>(value, System.nanoTime() + ttlNanos);
+        synchronized (seg) {
+            seg.map.put(key, item);
+        }
+    }
+
+    public void remove(K key) {
+        Segment seg = segmentFor(key);
+        synchronized (seg) {
+            seg.map.remove(key);
+        }
+    }
+
+    public void clear() {
+        for (Segment seg : segments) {
+            synchronized (seg) {
+                seg.map.clear();
+            }
+        }
+    }
+
+    /**
+     * 清理已过期的条目
+     */
+    public void cleanUp() {
+        long now = System.nanoTime();
+        for (Segment seg : segments) {
+            synchronized (seg) {
+                Iterator<Item<V>> it = seg.map.values().iterator();
+                while (it.hasNext()) {
+                    if (it.next().expireAt - now <= 0) {
+                        it.remove();
+                        expirations.increment();
+                    }
+                }
+            }
+        }
+    }
+
+    public int size() {
+        int n = 0;
+        for (Segment seg : segments) {
+            synchronized (seg) {
+                n += seg.map.size();
+            }
+        }
+        return n;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /** 因容量不足被淘汰的次数 */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /** 因过期被移除的次数 */
+    public long getExpirationCount() {
+        return expirations.sum();
+    }
+
+    public double getHitRatio() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0D : (double) h / total;
+    }
+
+    private static class Item<V> {
+        final V value;
+        final long expireAt;
+
+        Item(V value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private class Segment {
+        final LinkedHashMap<K, Item<V>> map;
+
+        Segment(final int capacity) {
+            this.map = new LinkedHashMap<K, Item<V>>(16, 0.75F, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, Item<V>> eldest) {
+                    if (size() > capacity) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package cn.songm.acc.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import cn.songm.acc.dao.UserDao;
+import cn.songm.acc.entity.User;
+
+/**
+ * 账号、昵称是否存在的进程内缓存
+ *
+ * <ul>
+ * <li>不存在缓存：数据库查询不到的账号、昵称短时间记住，有效期短、条目数有上限</li>
+ * <li>布隆过滤器：启动时逐行扫描全部账号、昵称构建，判断为不存在的一定没有被使用，
+ * 账号、昵称可用性检查大多不必查询数据库</li>
+ * </ul>
+ * 任意节点新增账号、昵称后在事务提交后调用{@link #taken(String, String)}，
+ * 删除不存在缓存、加入布隆过滤器，并通过Redis通知其它节点。
+ * 消息可能丢失，丢失时不存在缓存在过期后恢复；布隆过滤器在下次重建前会误判为未被使用，
+ * 所以只用于可用性检查，注册时仍由唯一索引保证不重复，登入只使用不存在缓存。
+ * 批量导入等不经过{@link #taken(String, String)}的写入完成后调用{@link #reload()}。
+ * 账号、昵称不区分大小写，与数据库的排序规则一致。
+ *
+ * @author zhangsong
+ *
+ */
+@Component("userExistenceCache")
+@ManagedResource(objectName = "cn.songm.acc:type=Cache,name=userExistenceCache")
+public class UserExistenceCache implements MessageListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UserExistenceCache.class);
+
+    /** 新增账号、昵称的消息频道 */
+    public static final String CHANNEL = "acc:user:exists";
+
+    private static final String ACCOUNT = "a";
+    private static final String NICKNAME = "n";
+    private static final String RELOAD = "r";
+
+    /** 当前节点标识，用于忽略自己发出的消息 */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @Autowired
+    private UserDao userDao;
+    @Resource(name = "cacheRedisTemplate")
+    private RedisTemplate<String, User> cacheRedisTemplate;
+
+    /** 不存在缓存最大条目数 */
+    @Value("${acc.exist.negative.maxSize:100000}")
+    private int negativeMaxSize;
+    /** 不存在缓存有效时长（秒） */
+    @Value("${acc.exist.negative.ttl:30}")
+    private long negativeTtl;
+    /** 布隆过滤器预计元素个数，按账号、昵称各自计算 */
+    @Value("${acc.exist.bloom.expected:2000000}")
+    private long bloomExpected;
+    /** 布隆过滤器误判率 */
+    @Value("${acc.exist.bloom.fpp:0.01}")
+    private double bloomFpp;
+    /** 布隆过滤器重建间隔（小时），0为只在启动时构建 */
+    @Value("${acc.exist.bloom.rebuild:24}")
+    private long rebuildInterval;
+
+    private LocalCache<String, Boolean> missing;
+    /** 正在使用的过滤器，构建完成前为null */
+    private volatile Filters active;
+    /** 正在构建的过滤器，构建期间新增的账号、昵称同时加入 */
+    private volatile Filters building;
+    private ScheduledExecutorService rebuilder;
+    private Runnable rebuildTask;
+
+    private final LongAdder bloomNegatives = new LongAdder();
+    private final LongAdder missingHits = new LongAdder();
+    private volatile long lastRebuildRows;
+    private volatile long lastRebuildMillis;
+
+    @PostConstruct
+    public void init() {
+        missing = new LocalCache<String, Boolean>(negativeMaxSize, negativeTtl, TimeUnit.SECONDS);
+        rebuilder = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "user-bloom-rebuild");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        Runnable task = rebuildTask = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    rebuild();
+                } catch (RuntimeException e) {
+                    LOG.warn("Rebuild user bloom filter failed", e);
+                }
+            }
+        };
+        // 不阻塞启动，构建完成前都查询数据库
+        if (rebuildInterval > 0) {
+            rebuilder.scheduleWithFixedDelay(task, 0, rebuildInterval, TimeUnit.HOURS);
+        } else {
+            rebuilder.execute(task);
+        }
+        rebuilder.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                missing.cleanUp();
+            }
+        }, negativeTtl, negativeTtl, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        rebuilder.shutdownNow();
+    }
+
+    private static String key(String s) {
+        return s.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 账号是否确定不存在
+     *
+     * @param account
+     * @param useBloom 是否参考布隆过滤器，登入时不参考
+     * @return
+     */
+    public boolean isAccountMissing(String account, boolean useBloom) {
+        return isMissing(ACCOUNT, account, useBloom);
+    }
+
+    /**
+     * 昵称是否确定未被使用
+     *
+     * @param nickname
+     * @return
+     */
+    public boolean isNicknameMissing(String nickname) {
+        return isMissing(NICKNAME, nickname, true);
+    }
+
+    private boolean isMissing(String type, String value, boolean useBloom) {
+        if (value == null) {
+            return false;
+        }
+        String k = key(value);
+        Filters f = active;
+        if (useBloom && f != null && !f.get(type).mightContain(k)) {
+            bloomNegatives.increment();
+            return true;
+        }
+        if (missing.get(type + ":" + k) != null) {
+            missingHits.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 记住数据库中不存在的账号
+     *
+     * @param account
+     */
+    public void putMissingAccount(String account) {
+        if (account != null) {
+            missing.put(ACCOUNT + ":" + key(account), Boolean.TRUE);
+        }
+    }
+
+    /**
+     * 记住数据库中不存在的昵称
+     *
+     * @param nickname
+     */
+    public void putMissingNickname(String nickname) {
+        if (nickname != null) {
+            missing.put(NICKNAME + ":" + key(nickname), Boolean.TRUE);
+        }
+    }
+
+    /**
+     * 账号、昵称已被使用，在事务提交后调用，并通知其它节点
+     *
+     * @param account 可为null
+     * @param nickname 可为null
+     */
+    public void taken(String account, String nickname) {
+        if (account != null) {
+            add(ACCOUNT, key(account));
+            publish(ACCOUNT, key(account));
+        }
+        if (nickname != null) {
+            add(NICKNAME, key(nickname));
+            publish(NICKNAME, key(nickname));
+        }
+    }
+
+    private void add(String type, String k) {
+        missing.remove(type + ":" + k);
+        Filters f = active;
+        if (f != null) {
+            f.get(type).add(k);
+        }
+        f = building;
+        if (f != null) {
+            f.get(type).add(k);
+        }
+    }
+
+    private void publish(String type, String k) {
+        publish(cacheRedisTemplate, nodeId + ":" + type + ":" + k);
+    }
+
+    private static void publish(RedisTemplate<?, ?> template, String message) {
+        final byte[] channel = CHANNEL.getBytes(StandardCharsets.UTF_8);
+        final byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        try {
+            template.execute(new RedisCallback<Long>() {
+                @Override
+                public Long doInRedis(RedisConnection connection) throws DataAccessException {
+                    return connection.publish(channel, body);
+                }
+            });
+        } catch (RuntimeException e) {
+            LOG.warn("Publish {} failed: {}", message, e.getMessage());
+        }
+    }
+
+    /**
+     * 本节点和其它节点清空不存在缓存，并在后台重建布隆过滤器，重建完成前都查询数据库
+     */
+    @ManagedOperation(description = "各节点清空不存在缓存并重建布隆过滤器，批量导入后调用")
+    public void reload() {
+        reloadLocal();
+        publish(RELOAD, "");
+    }
+
+    /**
+     * 只通知各节点重建，供不创建本缓存的进程（批量导入命令行）使用，不扫描用户表
+     *
+     * @param template
+     */
+    public static void publishReload(RedisTemplate<?, ?> template) {
+        publish(template, UUID.randomUUID() + ":" + RELOAD + ":");
+    }
+
+    private void reloadLocal() {
+        active = null;
+        missing.clear();
+        rebuilder.execute(rebuildTask);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        String[] parts = body.split(":", 3);
+        if (parts.length < 3 || parts[0].equals(nodeId)) {
+            return;
+        }
+        if (ACCOUNT.equals(parts[1]) || NICKNAME.equals(parts[1])) {
+            add(parts[1], parts[2]);
+        } else if (RELOAD.equals(parts[1])) {
+            reloadLocal();
+        } else {
+            LOG.warn("Illegal taken message: {}", body);
+        }
+    }
+
+    /**
+     * 扫描全部账号、昵称重建布隆过滤器
+     *
+     * 先公开正在构建的过滤器再开始扫描，扫描开始后提交的新增通过{@link #taken(String, String)}加入，
+     * 不会遗漏。
+     */
+    @ManagedOperation(description = "重建账号、昵称布隆过滤器")
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        final Filters f = new Filters(new BloomFilter(bloomExpected, bloomFpp),
+                new BloomFilter(bloomExpected, bloomFpp));
+        building = f;
+        final long[] rows = new long[1];
+        try {
+            userDao.scanNames(new ResultHandler<User>() {
+                @Override
+                public void handleResult(ResultContext<? extends User> context) {
+                    User user = context.getResultObject();
+                    if (user.getAccount() != null) {
+                        f.accounts.add(key(user.getAccount()));
+                    }
+                    if (user.getNickname() != null) {
+                        f.nicknames.add(key(user.getNickname()));
+                    }
+                    rows[0]++;
+                }
+            });
+            active = f;
+        } finally {
+            building = null;
+        }
+        lastRebuildRows = rows[0];
+        lastRebuildMillis = System.currentTimeMillis() - start;
+        LOG.info("Rebuilt user bloom filter with {} users in {} ms", rows[0], lastRebuildMillis);
+        if (rows[0] > bloomExpected) {
+            LOG.warn("{} users exceed acc.exist.bloom.expected {}, false positive rate will rise",
+                    rows[0], bloomExpected);
+        }
+    }
+
+    @ManagedOperation(description = "清空不存在缓存")
+    public void clear() {
+        missing.clear();
+    }
+
+    @ManagedAttribute(description = "布隆过滤器是否可用")
+    public boolean isBloomReady() {
+        return active != null;
+    }
+
+    @ManagedAttribute(description = "布隆过滤器判断为不存在的次数")
+    public long getBloomNegativeCount() {
+        return bloomNegatives.sum();
+    }
+
+    @ManagedAttribute(description = "不存在缓存命中次数")
+    public long getMissingHitCount() {
+        return missingHits.sum();
+    }
+
+    @ManagedAttribute(description = "不存在缓存条目数")
+    public int getMissingSize() {
+        return missing.size();
+    }
+
+    @ManagedAttribute(description = "最近一次重建扫描的用户数")
+    public long getLastRebuildRows() {
+        return lastRebuildRows;
+    }
+
+    @ManagedAttribute(description = "最近一次重建耗时（毫秒）")
+    public long getLastRebuildMillis() {
+        return lastRebuildMillis;
+    }
+
+    @ManagedAttribute(description = "布隆过滤器占用内存（字节）")
+    public long getBloomBytes() {
+        Filters f = active;
+        return f == null ? 0L : f.accounts.sizeInBytes() + f.nicknames.sizeInBytes();
+    }
+
+    /**
+     * 同一次扫描构建的账号、昵称过滤器
+     */
+    private static class Filters {
+        final BloomFilter accounts;
+        final BloomFilter nicknames;
+
+        Filters(BloomFilter accounts, BloomFilter nicknames) {
+            this.accounts = accounts;
+            this.nicknames = nicknames;
+        }
+
+        BloomFilter get(String type) {
+            return ACCOUNT.equals(type) ? accounts : nicknames;
+        }
+    }
+}
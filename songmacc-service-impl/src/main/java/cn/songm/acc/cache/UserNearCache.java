@@ -0,0 +1,196 @@
+package cn.songm.acc.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import cn.songm.acc.entity.User;
+
+/**
+ * 用户信息进程内缓存（一级缓存，位于Redis之前）
+ *
+ * 任意节点修改用户后通过Redis发布失效消息，其它节点收到后删除本地副本。
+ * 消息可能丢失，所以本地缓存的有效时长要设置得比较短。
+ *
+ * @author zhangsong
+ *
+ */
+@Component("userNearCache")
+@ManagedResource(objectName = "cn.songm.acc:type=Cache,name=userNearCache")
+public class UserNearCache implements MessageListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UserNearCache.class);
+
+    /** 失效消息频道 */
+    public static final String CHANNEL = "acc:user:invalidate";
+
+    /** 当前节点标识，用于忽略自己发出的消息 */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @Resource(name = "cacheRedisTemplate")
+    private RedisTemplate<String, User> cacheRedisTemplate;
+
+    @Value("${acc.cache.local.maxSize:10000}")
+    private int maxSize;
+    @Value("${acc.cache.local.ttl:60}")
+    private long ttl;
+
+    private LocalCache<Long, User> users;
+    private LocalCache<Long, User> privacies;
+    private ScheduledExecutorService sweeper;
+
+    @PostConstruct
+    public void init() {
+        users = new LocalCache<Long, User>(maxSize, ttl, TimeUnit.SECONDS);
+        privacies = new LocalCache<Long, User>(maxSize, ttl, TimeUnit.SECONDS);
+        sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "user-near-cache-sweep");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        // 过期条目只在再次读取时删除，不再访问的要定时清理
+        sweeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                users.cleanUp();
+                privacies.cleanUp();
+            }
+        }, ttl, ttl, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        sweeper.shutdownNow();
+    }
+
+    public User getUser(Long userId) {
+        return users.get(userId);
+    }
+
+    public void putUser(User user) {
+        users.put(user.getUserId(), user);
+    }
+
+    public User getPrivacy(Long userId) {
+        return privacies.get(userId);
+    }
+
+    public void putPrivacy(User user) {
+        privacies.put(user.getUserId(), user);
+    }
+
+    /**
+     * 删除本节点缓存
+     *
+     * @param userId
+     */
+    public void remove(Long userId) {
+        users.remove(userId);
+        privacies.remove(userId);
+    }
+
+    /**
+     * 删除本节点缓存，并通知其它节点删除
+     *
+     * @param userId
+     */
+    public void invalidate(Long userId) {
+        remove(userId);
+        final byte[] channel = CHANNEL.getBytes(StandardCharsets.UTF_8);
+        final byte[] body = (nodeId + ":" + userId).getBytes(StandardCharsets.UTF_8);
+        try {
+            cacheRedisTemplate.execute(new RedisCallback<Long>() {
+                @Override
+                public Long doInRedis(RedisConnection connection) throws DataAccessException {
+                    return connection.publish(channel, body);
+                }
+            });
+        } catch (RuntimeException e) {
+            LOG.warn("Publish user {} invalidation failed: {}", userId, e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int i = body.lastIndexOf(':');
+        if (i < 0 || body.substring(0, i).equals(nodeId)) {
+            return;
+        }
+        try {
+            remove(Long.valueOf(body.substring(i + 1)));
+        } catch (NumberFormatException e) {
+            LOG.warn("Illegal invalidation message: {}", body);
+        }
+    }
+
+    @ManagedOperation(description = "清空本节点缓存")
+    public void clear() {
+        users.clear();
+        privacies.clear();
+    }
+
+    @ManagedAttribute(description = "用户信息缓存命中率")
+    public double getUserHitRatio() {
+        return users.getHitRatio();
+    }
+
+    @ManagedAttribute(description = "用户信息缓存淘汰次数")
+    public long getUserEvictionCount() {
+        return users.getEvictionCount();
+    }
+
+    @ManagedAttribute(description = "用户信息缓存过期次数")
+    public long getUserExpirationCount() {
+        return users.getExpirationCount();
+    }
+
+    @ManagedAttribute(description = "用户信息缓存条目数")
+    public int getUserSize() {
+        return users.size();
+    }
+
+    @ManagedAttribute(description = "用户隐私缓存命中率")
+    public double getPrivacyHitRatio() {
+        return privacies.getHitRatio();
+    }
+
+    @ManagedAttribute(description = "用户隐私缓存淘汰次数")
+    public long getPrivacyEvictionCount() {
+        return privacies.getEvictionCount();
+    }
+
+    @ManagedAttribute(description = "用户隐私缓存过期次数")
+    public long getPrivacyExpirationCount() {
+        return privacies.getExpirationCount();
+    }
+
+    @ManagedAttribute(description = "用户隐私缓存条目数")
+    public int getPrivacySize() {
+        return privacies.size();
+    }
+}
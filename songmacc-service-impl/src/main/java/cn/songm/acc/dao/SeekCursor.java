@@ -0,0 +1,79 @@
+package cn.songm.acc.dao;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+
+import cn.songm.acc.entity.SeekPage;
+
+/**
+ * 游标分页的位置
+ * 
+ * 按(created, id)降序分页，游标记录上一页最后一行的created和id，编码为不透明的字符串。
+ * 
+ * @author zhangsong
+ *
+ */
+public final class SeekCursor {
+
+    private static final String VERSION = "1";
+    private static final char SEPARATOR = ':';
+
+    private final Date created;
+    private final String id;
+
+    public SeekCursor(Date created, String id) {
+        if (created == null || id == null) {
+            throw new IllegalArgumentException();
+        }
+        this.created = created;
+        this.id = id;
+    }
+
+    public Date getCreated() {
+        return created;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String encode() {
+        String raw = VERSION + SEPARATOR + created.getTime() + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标
+     * @param token
+     * @return
+     * @throws IllegalArgumentException 游标无效
+     */
+    public static SeekCursor decode(String token) {
+        String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        int a = raw.indexOf(SEPARATOR);
+        int b = a < 0 ? -1 : raw.indexOf(SEPARATOR, a + 1);
+        if (b < 0 || !VERSION.equals(raw.substring(0, a))) {
+            throw new IllegalArgumentException("Invalid cursor: " + token);
+        }
+        return new SeekCursor(new Date(Long.parseLong(raw.substring(a + 1, b))), raw.substring(b + 1));
+    }
+
+    /**
+     * 由多查一行的结果生成分页
+     * @param rows 最多pageSize + 1行
+     * @param pageSize
+     * @param cursorOf 行对应的游标
+     * @return
+     */
+    public static <T> SeekPage<T> page(List<T> rows, int pageSize, Function<T, SeekCursor> cursorOf) {
+        if (rows.size() <= pageSize) {
+            return new SeekPage<T>(rows, null);
+        }
+        List<T> list = rows.subList(0, pageSize);
+        return new SeekPage<T>(new ArrayList<T>(list), cursorOf.apply(list.get(pageSize - 1)).encode());
+    }
+}
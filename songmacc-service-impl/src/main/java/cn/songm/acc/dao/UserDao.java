@@ -1,5 +1,13 @@
 package cn.songm.acc.dao;
 
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.session.ResultHandler;
+
+import cn.songm.acc.entity.SeekPage;
 import cn.songm.acc.entity.User;
 import cn.songm.common.dao.BaseDao;
 
@@ -13,12 +21,75 @@ public interface UserDao extends BaseDao<User> {
 
     String queryPwdByAccount(String account);
 
+    /**
+     * 根据账号获取用户信息（包含密码），用于登入校验
+     * 
+     * @param account
+     * @return
+     */
+    User queryCredentialByAccount(String account);
+
+    /**
+     * 根据用户ID获取用户信息（包含密码），用于修改密码
+     * 
+     * @param userId
+     * @return
+     */
+    User queryCredentialById(long userId);
+
     User queryByAccount(String account);
 
     User queryPrivacyById(long userId);
 
+    List<User> queryByIds(Collection<Long> userIds);
+
+    /**
+     * 游标分页，按创建时间、用户ID降序
+     * 
+     * @param cursor 上一页返回的游标，第一页为null
+     * @param pageSize
+     * @param params condition_sql中的查询条件，可为null
+     * @return
+     */
+    SeekPage<User> listPageSeek(String cursor, int pageSize, Map<String, Object> params);
+
+    /**
+     * 按(updated, user_id)升序获取水位之后变更的用户
+     * 
+     * @param updated 水位的更新时间，null从头开始
+     * @param userId 水位的用户ID
+     * @param until 只返回早于该时间的变更
+     * @param limit 最多条数
+     * @return
+     */
+    List<User> queryChangedSince(Date updated, Long userId, Date until, int limit);
+
+    /**
+     * 按用户ID顺序逐行读取全部用户，不在内存中保存结果
+     * 
+     * @param handler
+     */
+    void exportAll(ResultHandler<User> handler);
+
+    /**
+     * 逐行读取全部用户的账号和昵称，其它字段为空
+     * 
+     * @param handler
+     */
+    void scanNames(ResultHandler<User> handler);
+
     void updatePassword(Long userId, String password);
 
+    /**
+     * 密码散列升级，只在密码仍为oldPassword时更新
+     * 
+     * @param userId
+     * @param oldPassword
+     * @param newPassword
+     * @return 更新的行数
+     */
+    int rehashPassword(long userId, String oldPassword, String newPassword);
+
     void updatePhoto(long userId, String avatarServer, String avatarPath);
 
     void updateAccount(long userId, String account, String password);
@@ -29,4 +100,38 @@ public interface UserDao extends BaseDao<User> {
 
     int insert(User user);
 
+    /**
+     * 以JDBC批处理插入一批用户，在独立的连接和事务中提交
+     * 
+     * 任何一行失败整批回滚，由调用方逐行重试。
+     * 
+     * @param users
+     */
+    void insertBatch(List<User> users);
+
+    /**
+     * 返回已被使用的账号
+     * 
+     * @param accounts
+     * @return
+     */
+    List<String> queryExistingAccounts(Collection<String> accounts);
+
+    /**
+     * 返回已被使用的昵称
+     * 
+     * @param nicknames
+     * @return
+     */
+    List<String> queryExistingNicknames(Collection<String> nicknames);
+
+    /**
+     * 租用一段序列号
+     * 
+     * @param seqName
+     * @param step
+     * @return 号段中最大的序列号
+     */
+    long leaseSequence(String seqName, int step);
+
 }
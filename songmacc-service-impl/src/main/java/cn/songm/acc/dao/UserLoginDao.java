@@ -1,9 +1,58 @@
 package cn.songm.acc.dao;
 
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import cn.songm.acc.entity.SeekPage;
 import cn.songm.acc.entity.UserLogin;
 import cn.songm.common.dao.BaseDao;
 
 public interface UserLoginDao extends BaseDao<UserLogin> {
 
+    /**
+     * 批量写入登入日志
+     * @param logins
+     */
+    public void insertBatch(List<UserLogin> logins);
+
+    /**
+     * 游标分页，按创建时间、编号降序
+     * @param cursor 上一页返回的游标，第一页为null
+     * @param pageSize
+     * @param params condition_sql中的查询条件，可为null
+     * @return
+     */
+    public SeekPage<UserLogin> listPageSeek(String cursor, int pageSize, Map<String, Object> params);
+
+    /**
+     * 删除早于指定时间的日志
+     * @param before
+     * @param limit 最多删除的条数
+     * @return 删除的条数
+     */
+    public int deleteBefore(Date before, int limit);
+
+    /**
+     * 按月分区的名称（pyyyyMM，最后是pmax），未分区时为空
+     * @return
+     */
+    public List<String> listPartitions();
+
+    /**
+     * 是否有不早于指定时间的日志
+     * @param since
+     * @return
+     */
+    public boolean existsSince(Date since);
+
+    /**
+     * 从pmax中拆分出一个月的分区
+     * @param name 分区名
+     * @param lessThan 下月1日，yyyy-MM-dd
+     */
+    public void addPartition(String name, String lessThan);
+
+    public void dropPartition(String name);
 
 }
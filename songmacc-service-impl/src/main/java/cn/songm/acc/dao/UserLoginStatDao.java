@@ -0,0 +1,24 @@
+package cn.songm.acc.dao;
+
+import java.util.Date;
+import java.util.List;
+
+import cn.songm.acc.entity.UserLoginStat;
+
+public interface UserLoginStatDao {
+
+    /**
+     * 累加写入登入统计，相同时间段和账号的计数相加
+     * @param stats
+     */
+    public void upsertBatch(List<UserLoginStat> stats);
+
+    public UserLoginStat sumByAccount(String account, Date begin, Date end);
+
+    public UserLoginStat sumByUser(long userId, Date begin, Date end);
+
+    public List<UserLoginStat> listByAccount(String account, Date begin, Date end);
+
+    public List<UserLoginStat> listTopFailures(Date begin, Date end, int limit);
+
+}
@@ -1,11 +1,20 @@
 package cn.songm.acc.dao.impl;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.SqlSession;
 import org.springframework.stereotype.Repository;
 
+import cn.songm.acc.dao.SeekCursor;
 import cn.songm.acc.dao.UserDao;
+import cn.songm.acc.entity.SeekPage;
 import cn.songm.acc.entity.User;
 import cn.songm.common.dao.BaseDaoImpl;
 
@@ -13,6 +22,21 @@ import cn.songm.common.dao.BaseDaoImpl;
 public class UserDaoImpl extends BaseDaoImpl<User> implements UserDao {
 
     public static final String SQL_PWD_BY_ACCOUNT = "pwdByAccount";
+    public static final String SQL_CREDENTIAL_BY_ACCOUNT = "credentialByAccount";
+    public static final String SQL_CREDENTIAL_BY_ID = "credentialById";
+    public static final String SQL_REHASH_PASSWORD = "rehashPassword";
+    public static final String SQL_SEQUENCE_LEASE = "sequenceLease";
+    public static final String SQL_SELECT_BY_IDS = "selectByIds";
+    public static final String SQL_LIST_PAGE_SEEK = "listPageSeek";
+    public static final String SQL_SELECT_FOR_EXPORT = "selectForExport";
+    public static final String SQL_SELECT_NAMES = "selectNames";
+    public static final String SQL_LIST_CHANGED_SINCE = "listChangedSince";
+    public static final String SQL_INSERT_ROW = "insert";
+    public static final String SQL_EXISTING_ACCOUNTS = "selectExistingAccounts";
+    public static final String SQL_EXISTING_NICKNAMES = "selectExistingNicknames";
+
+    /** IN 查询每批最多的ID个数 */
+    private static final int MAX_IN_SIZE = 500;
     
     @Override
     public User queryPrivacyByAccount(String account) {
@@ -28,6 +52,95 @@ public class UserDaoImpl extends BaseDaoImpl<User> implements UserDao {
         return super.selectOneByColumn(param);
     }
 
+    @Override
+    public List<User> queryByIds(Collection<Long> userIds) {
+        List<User> users = new ArrayList<User>(userIds.size());
+        List<Long> ids = new ArrayList<Long>(userIds);
+        for (int from = 0; from < ids.size(); from += MAX_IN_SIZE) {
+            List<Long> part = ids.subList(from, Math.min(from + MAX_IN_SIZE, ids.size()));
+            users.addAll(sessionTemplate.<User>selectList(getStatement(SQL_SELECT_BY_IDS), part));
+        }
+        return users;
+    }
+
+    @Override
+    public SeekPage<User> listPageSeek(String cursor, int pageSize, Map<String, Object> params) {
+        Map<String, Object> param = params == null ? new HashMap<String, Object>()
+                : new HashMap<String, Object>(params);
+        if (cursor != null) {
+            SeekCursor seek = SeekCursor.decode(cursor);
+            param.put("seekCreated", seek.getCreated());
+            param.put("seekId", Long.valueOf(seek.getId()));
+        }
+        // 多查一行判断是否还有下一页
+        param.put("pageSize", pageSize + 1);
+        List<User> rows = sessionTemplate.selectList(getStatement(SQL_LIST_PAGE_SEEK), param);
+        return SeekCursor.page(rows, pageSize,
+                u -> new SeekCursor(u.getCreated(), String.valueOf(u.getUserId())));
+    }
+
+    @Override
+    public List<User> queryChangedSince(Date updated, Long userId, Date until, int limit) {
+        Map<String, Object> param = new HashMap<String, Object>();
+        param.put("updated", updated);
+        param.put("userId", userId == null ? Long.valueOf(0) : userId);
+        param.put("until", until);
+        param.put("limit", limit);
+        return sessionTemplate.selectList(getStatement(SQL_LIST_CHANGED_SINCE), param);
+    }
+
+    @Override
+    public void exportAll(ResultHandler<User> handler) {
+        sessionTemplate.select(getStatement(SQL_SELECT_FOR_EXPORT), handler);
+    }
+
+    @Override
+    public void scanNames(ResultHandler<User> handler) {
+        sessionTemplate.select(getStatement(SQL_SELECT_NAMES), handler);
+    }
+
+    @Override
+    public void insertBatch(List<User> users) {
+        // BATCH执行器不能与SqlSessionTemplate当前的执行器混用，单独打开会话
+        SqlSession session = sessionTemplate.getSqlSessionFactory()
+                .openSession(ExecutorType.BATCH, false);
+        try {
+            String statement = getStatement(SQL_INSERT_ROW);
+            for (User user : users) {
+                session.insert(statement, user);
+            }
+            session.flushStatements();
+            session.commit();
+        } catch (RuntimeException e) {
+            session.rollback();
+            RuntimeException translated = sessionTemplate.getPersistenceExceptionTranslator()
+                    .translateExceptionIfPossible(e);
+            throw translated == null ? e : translated;
+        } finally {
+            session.close();
+        }
+    }
+
+    @Override
+    public List<String> queryExistingAccounts(Collection<String> accounts) {
+        return selectInParts(SQL_EXISTING_ACCOUNTS, accounts);
+    }
+
+    @Override
+    public List<String> queryExistingNicknames(Collection<String> nicknames) {
+        return selectInParts(SQL_EXISTING_NICKNAMES, nicknames);
+    }
+
+    private List<String> selectInParts(String sqlId, Collection<String> values) {
+        List<String> result = new ArrayList<String>();
+        List<String> list = new ArrayList<String>(values);
+        for (int from = 0; from < list.size(); from += MAX_IN_SIZE) {
+            List<String> part = list.subList(from, Math.min(from + MAX_IN_SIZE, list.size()));
+            result.addAll(sessionTemplate.<String>selectList(getStatement(sqlId), part));
+        }
+        return result;
+    }
+
     @Override
     public int countByAccount(String account) {
         Map<String, Object> param = new HashMap<String, Object>();
@@ -47,6 +160,25 @@ public class UserDaoImpl extends BaseDaoImpl<User> implements UserDao {
         return sessionTemplate.selectOne(getStatement(SQL_PWD_BY_ACCOUNT), account);
     }
 
+    @Override
+    public User queryCredentialByAccount(String account) {
+        return sessionTemplate.selectOne(getStatement(SQL_CREDENTIAL_BY_ACCOUNT), account);
+    }
+
+    @Override
+    public User queryCredentialById(long userId) {
+        return sessionTemplate.selectOne(getStatement(SQL_CREDENTIAL_BY_ID), userId);
+    }
+
+    @Override
+    public int rehashPassword(long userId, String oldPassword, String newPassword) {
+        Map<String, Object> param = new HashMap<String, Object>();
+        param.put("userId", userId);
+        param.put("oldPassword", oldPassword);
+        param.put("newPassword", newPassword);
+        return sessionTemplate.update(getStatement(SQL_REHASH_PASSWORD), param);
+    }
+
     @Override
     public User queryByAccount(String account) {
         Map<String, Object> param = new HashMap<String, Object>();
@@ -85,6 +217,15 @@ public class UserDaoImpl extends BaseDaoImpl<User> implements UserDao {
         update(user);
     }
 
+    @Override
+    public long leaseSequence(String seqName, int step) {
+        Map<String, Object> param = new HashMap<String, Object>();
+        param.put("seqName", seqName);
+        param.put("step", step);
+        Long max = sessionTemplate.selectOne(getStatement(SQL_SEQUENCE_LEASE), param);
+        return max.longValue();
+    }
+
 	@Override
 	public void updateAccount(long userId, String account, String password) {
 		User user = new User(userId);
@@ -1,8 +1,15 @@
 package cn.songm.acc.dao.impl;
 
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.springframework.stereotype.Repository;
 
+import cn.songm.acc.dao.SeekCursor;
 import cn.songm.acc.dao.UserLoginDao;
+import cn.songm.acc.entity.SeekPage;
 import cn.songm.acc.entity.UserLogin;
 import cn.songm.common.dao.BaseDaoImpl;
 
@@ -10,4 +17,66 @@ import cn.songm.common.dao.BaseDaoImpl;
 public class UserLoginDaoImpl extends BaseDaoImpl<UserLogin>
         implements UserLoginDao {
 
+    public static final String SQL_INSERT_BATCH = "insertBatch";
+    public static final String SQL_DELETE_BEFORE = "deleteBefore";
+    public static final String SQL_LIST_PARTITIONS = "listPartitions";
+    public static final String SQL_EXISTS_SINCE = "existsSince";
+    public static final String SQL_ADD_PARTITION = "addPartition";
+    public static final String SQL_DROP_PARTITION = "dropPartition";
+    public static final String SQL_LIST_PAGE_SEEK = "listPageSeek";
+
+    @Override
+    public void insertBatch(List<UserLogin> logins) {
+        if (logins.isEmpty()) {
+            return;
+        }
+        sessionTemplate.insert(getStatement(SQL_INSERT_BATCH), logins);
+    }
+
+    @Override
+    public SeekPage<UserLogin> listPageSeek(String cursor, int pageSize, Map<String, Object> params) {
+        Map<String, Object> param = params == null ? new HashMap<String, Object>()
+                : new HashMap<String, Object>(params);
+        if (cursor != null) {
+            SeekCursor seek = SeekCursor.decode(cursor);
+            param.put("seekCreated", seek.getCreated());
+            param.put("seekId", seek.getId());
+        }
+        // 多查一行判断是否还有下一页
+        param.put("pageSize", pageSize + 1);
+        List<UserLogin> rows = sessionTemplate.selectList(getStatement(SQL_LIST_PAGE_SEEK), param);
+        return SeekCursor.page(rows, pageSize, l -> new SeekCursor(l.getCreated(), l.getNo()));
+    }
+
+    @Override
+    public int deleteBefore(Date before, int limit) {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("before", before);
+        params.put("limit", limit);
+        return sessionTemplate.delete(getStatement(SQL_DELETE_BEFORE), params);
+    }
+
+    @Override
+    public List<String> listPartitions() {
+        return sessionTemplate.selectList(getStatement(SQL_LIST_PARTITIONS));
+    }
+
+    @Override
+    public boolean existsSince(Date since) {
+        return sessionTemplate.selectOne(getStatement(SQL_EXISTS_SINCE), since) != null;
+    }
+
+    @Override
+    public void addPartition(String name, String lessThan) {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("name", name);
+        params.put("lessThan", lessThan);
+        sessionTemplate.update(getStatement(SQL_ADD_PARTITION), params);
+    }
+
+    @Override
+    public void dropPartition(String name) {
+        sessionTemplate.update(getStatement(SQL_DROP_PARTITION), name);
+    }
+
 }
@@ -0,0 +1,73 @@
+package cn.songm.acc.dao.impl;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import cn.songm.acc.dao.UserLoginStatDao;
+import cn.songm.acc.entity.UserLoginStat;
+
+@Repository("userLoginStatDao")
+public class UserLoginStatDaoImpl implements UserLoginStatDao {
+
+    public static final String SQL_UPSERT_BATCH = "upsertBatch";
+    public static final String SQL_SUM_BY_ACCOUNT = "sumByAccount";
+    public static final String SQL_SUM_BY_USER = "sumByUser";
+    public static final String SQL_LIST_BY_ACCOUNT = "listByAccount";
+    public static final String SQL_LIST_TOP_FAILURES = "listTopFailures";
+
+    @Autowired
+    private SqlSessionTemplate sessionTemplate;
+
+    private String getStatement(String sqlId) {
+        return UserLoginStatDaoImpl.class.getName() + "." + sqlId;
+    }
+
+    private Map<String, Object> range(Date begin, Date end) {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("begin", begin);
+        params.put("end", end);
+        return params;
+    }
+
+    @Override
+    public void upsertBatch(List<UserLoginStat> stats) {
+        if (stats.isEmpty()) {
+            return;
+        }
+        sessionTemplate.insert(getStatement(SQL_UPSERT_BATCH), stats);
+    }
+
+    @Override
+    public UserLoginStat sumByAccount(String account, Date begin, Date end) {
+        Map<String, Object> params = range(begin, end);
+        params.put("account", account);
+        return sessionTemplate.selectOne(getStatement(SQL_SUM_BY_ACCOUNT), params);
+    }
+
+    @Override
+    public UserLoginStat sumByUser(long userId, Date begin, Date end) {
+        Map<String, Object> params = range(begin, end);
+        params.put("userId", userId);
+        return sessionTemplate.selectOne(getStatement(SQL_SUM_BY_USER), params);
+    }
+
+    @Override
+    public List<UserLoginStat> listByAccount(String account, Date begin, Date end) {
+        Map<String, Object> params = range(begin, end);
+        params.put("account", account);
+        return sessionTemplate.selectList(getStatement(SQL_LIST_BY_ACCOUNT), params);
+    }
+
+    @Override
+    public List<UserLoginStat> listTopFailures(Date begin, Date end, int limit) {
+        Map<String, Object> params = range(begin, end);
+        params.put("limit", limit);
+        return sessionTemplate.selectList(getStatement(SQL_LIST_TOP_FAILURES), params);
+    }
+}
@@ -0,0 +1,206 @@
+package cn.songm.acc.export;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import cn.songm.acc.dao.UserDao;
+import cn.songm.acc.entity.User;
+import cn.songm.common.utils.JsonUtils;
+
+/**
+ * 用户全量导出
+ *
+ * 通过ResultHandler逐行读取（MySQL驱动流式读取结果集），边读边写，内存占用与用户数无关。
+ * 同一时间只允许一个导出任务。
+ *
+ * @author zhangsong
+ *
+ */
+@Component("userExporter")
+@ManagedResource(objectName = "cn.songm.acc:type=Export,name=userExporter")
+public class UserExporter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UserExporter.class);
+
+    /** 每多少行记录一次进度日志 */
+    private static final long LOG_EVERY = 100000;
+
+    private static final String[] CSV_HEADER = { "user_id", "account", "nickname", "real_name",
+            "avatar_server", "avatar_path", "avatar", "gender", "birth_year", "birth_month",
+            "birth_day", "summary", "created", "updated" };
+
+    /**
+     * 导出格式
+     */
+    public enum Format {
+        /** 每行一个JSON对象 */
+        NDJSON,
+        /** 逗号分隔，首行为列名 */
+        CSV
+    }
+
+    @Autowired
+    private UserDao userDao;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong rows = new AtomicLong();
+    private volatile long startTime;
+    private volatile long endTime;
+
+    /**
+     * 导出全部用户到输出流，不关闭输出流
+     * @param out
+     * @param format
+     * @return 导出的行数
+     * @throws IOException
+     */
+    public long export(OutputStream out, final Format format) throws IOException {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("User export is already running");
+        }
+        rows.set(0);
+        startTime = System.currentTimeMillis();
+        endTime = 0;
+        try {
+            final Writer writer = new BufferedWriter(
+                    new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+            final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+            if (format == Format.CSV) {
+                writeCsv(writer, (Object[]) CSV_HEADER);
+            }
+            try {
+                userDao.exportAll(new ResultHandler<User>() {
+                    @Override
+                    public void handleResult(ResultContext<? extends User> context) {
+                        User user = context.getResultObject();
+                        try {
+                            if (format == Format.CSV) {
+                                writeCsv(writer, user.getUserId(), user.getAccount(), user.getNickname(),
+                                        user.getRealName(), user.getAvatarServer(), user.getAvatarPath(),
+                                        user.getAvatar(), user.getGender(), user.getBirthYear(),
+                                        user.getBirthMonth(), user.getBirthDay(), user.getSummary(),
+                                        format(dateFormat, user.getCreated()),
+                                        format(dateFormat, user.getUpdated()));
+                            } else {
+                                user.setPassword(null);
+                                writer.write(JsonUtils.getInstance().toJson(user));
+                                writer.write('\n');
+                            }
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        long n = rows.incrementAndGet();
+                        if (n % LOG_EVERY == 0) {
+                            LOG.info("Exported {} users", n);
+                        }
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            writer.flush();
+            return rows.get();
+        } finally {
+            endTime = System.currentTimeMillis();
+            running.set(false);
+        }
+    }
+
+    /**
+     * 导出全部用户到文件，先写临时文件，完成后改名
+     * @param path 文件路径
+     * @param format NDJSON或CSV
+     * @return 导出的行数
+     * @throws IOException
+     */
+    @ManagedOperation(description = "导出全部用户到文件，格式NDJSON或CSV")
+    public long exportToFile(String path, String format) throws IOException {
+        Format f = Format.valueOf(format.toUpperCase());
+        File target = new File(path);
+        File tmp = new File(path + ".tmp");
+        long n;
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            n = export(out, f);
+        }
+        if (target.exists() && !target.delete() || !tmp.renameTo(target)) {
+            throw new IOException("Rename " + tmp + " to " + target + " failed");
+        }
+        LOG.info("Exported {} users to {}", n, target);
+        return n;
+    }
+
+    private static String format(SimpleDateFormat dateFormat, Date date) {
+        return date == null ? null : dateFormat.format(date);
+    }
+
+    private static void writeCsv(Writer writer, Object... values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            Object v = values[i];
+            if (v == null) {
+                continue;
+            }
+            String s = v.toString();
+            if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0 && s.indexOf('\r') < 0) {
+                writer.write(s);
+            } else {
+                writer.write('"');
+                writer.write(s.replace("\"", "\"\""));
+                writer.write('"');
+            }
+        }
+        writer.write('\n');
+    }
+
+    @ManagedAttribute(description = "是否正在导出")
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    @ManagedAttribute(description = "本次（或上次）已导出行数")
+    public long getExportedRows() {
+        return rows.get();
+    }
+
+    @ManagedAttribute(description = "本次（或上次）导出耗时（秒）")
+    public long getElapsedSeconds() {
+        if (startTime == 0) {
+            return 0;
+        }
+        long end = endTime == 0 ? System.currentTimeMillis() : endTime;
+        return (end - startTime) / 1000;
+    }
+
+    @ManagedAttribute(description = "导出速度（行/秒）")
+    public double getRowsPerSecond() {
+        if (startTime == 0) {
+            return 0D;
+        }
+        long end = endTime == 0 ? System.currentTimeMillis() : endTime;
+        long millis = Math.max(1, end - startTime);
+        return rows.get() * 1000D / millis;
+    }
+}
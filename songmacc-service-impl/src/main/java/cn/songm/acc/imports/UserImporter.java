@@ -0,0 +1,630 @@
+package cn.songm.acc.imports;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import cn.songm.acc.cache.UserExistenceCache;
+import cn.songm.acc.dao.UserDao;
+import cn.songm.acc.entity.User;
+import cn.songm.acc.keyword.KeywordFilter;
+import cn.songm.acc.password.PasswordEncoder;
+import cn.songm.acc.sequence.UserIdGenerator;
+import cn.songm.acc.validate.UserValidator;
+
+/**
+ * 用户批量导入
+ *
+ * 输入为UTF-8编码的CSV，首行为列名，可用列：account, password, nickname, real_name, gender,
+ * birth_year, birth_month, birth_day, summary，其中password、nickname必须有，其它列忽略。
+ * 校验规则与注册相同。
+ *
+ * 逐行读取，每chunkSize行为一块，多个线程并行校验（格式、块内重复、库中已存在），
+ * 调用线程按输入顺序为每块租用一段ID，用JDBC批处理写入并单独提交。
+ * 整块失败时（并发写入或跨块重复导致唯一索引冲突）逐行重试。
+ * 失败的行原样写入拒绝文件，末尾追加error列，修正后可再次导入。
+ * 导入结束后（包括中途失败）各节点重建账号、昵称存在缓存；
+ * 命令行进程不创建存在缓存，只通过Redis发布重建消息。
+ *
+ * @author zhangsong
+ *
+ */
+@Component("userImporter")
+@ManagedResource(objectName = "cn.songm.acc:type=Import,name=userImporter")
+public class UserImporter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UserImporter.class);
+
+    /** 每多少行记录一次进度日志 */
+    private static final long LOG_EVERY = 100000;
+
+    /** 账号唯一索引 */
+    private static final String UK_ACCOUNT = "uk_acc_user_account";
+
+    @Autowired
+    private UserDao userDao;
+    @Autowired
+    private UserIdGenerator userIdGenerator;
+    @Autowired
+    private KeywordFilter keywordFilter;
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+    @Autowired(required = false)
+    private UserExistenceCache userExistenceCache;
+    @Autowired(required = false)
+    @Qualifier("cacheRedisTemplate")
+    private RedisTemplate<String, User> cacheRedisTemplate;
+
+    /** 每块行数，即每次批处理提交的行数 */
+    @Value("${acc.import.chunkSize:1000}")
+    private int chunkSize;
+    /** 校验线程数，0为CPU核数 */
+    @Value("${acc.import.threads:0}")
+    private int threads;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong readRows = new AtomicLong();
+    private final AtomicLong importedRows = new AtomicLong();
+    private final AtomicLong rejectedRows = new AtomicLong();
+    private final AtomicLong batchFallbacks = new AtomicLong();
+    private volatile long startTime;
+    private volatile long endTime;
+
+    /**
+     * 导入结果
+     */
+    public static class Summary {
+        private final long total;
+        private final long imported;
+        private final long rejected;
+        private final long millis;
+
+        Summary(long total, long imported, long rejected, long millis) {
+            this.total = total;
+            this.imported = imported;
+            this.rejected = rejected;
+            this.millis = millis;
+        }
+
+        /** 读取的行数（不含列名行） */
+        public long getTotal() {
+            return total;
+        }
+
+        public long getImported() {
+            return imported;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("total=%d, imported=%d, rejected=%d, %.1fs, %.0f rows/s",
+                    total, imported, rejected, millis / 1000D, total * 1000D / Math.max(1, millis));
+        }
+    }
+
+    /**
+     * 从输入流导入用户，失败的行写入rejects，不关闭输入输出流
+     *
+     * @param in CSV
+     * @param rejects 拒绝的行
+     * @return
+     * @throws IOException
+     */
+    public Summary importUsers(InputStream in, OutputStream rejects) throws IOException {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("User import is already running");
+        }
+        readRows.set(0);
+        importedRows.set(0);
+        rejectedRows.set(0);
+        batchFallbacks.set(0);
+        startTime = System.currentTimeMillis();
+        endTime = 0;
+        int n = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(n, daemon("user-import"));
+        try {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024);
+            Writer rejectWriter = new BufferedWriter(
+                    new OutputStreamWriter(rejects, StandardCharsets.UTF_8), 64 * 1024);
+            Record header = readRecord(reader);
+            if (header == null) {
+                throw new IllegalArgumentException("Empty input");
+            }
+            final Columns columns = new Columns(parseCsv(header.raw));
+            rejectWriter.write(header.raw);
+            rejectWriter.write(",error\n");
+
+            // 按提交顺序写入，最多2n块在校验或等待写入，内存占用与总行数无关
+            Deque<Future<Chunk>> pending = new ArrayDeque<Future<Chunk>>();
+            Chunk chunk = new Chunk();
+            Record record;
+            while ((record = readRecord(reader)) != null) {
+                readRows.incrementAndGet();
+                chunk.records.add(record);
+                if (chunk.records.size() >= chunkSize) {
+                    pending.add(submit(pool, chunk, columns));
+                    chunk = new Chunk();
+                    while (pending.size() >= 2 * n) {
+                        write(await(pending.poll()), rejectWriter);
+                    }
+                }
+            }
+            if (!chunk.records.isEmpty()) {
+                pending.add(submit(pool, chunk, columns));
+            }
+            while (!pending.isEmpty()) {
+                write(await(pending.poll()), rejectWriter);
+            }
+            rejectWriter.flush();
+            endTime = System.currentTimeMillis();
+            return new Summary(readRows.get(), importedRows.get(), rejectedRows.get(),
+                    endTime - startTime);
+        } finally {
+            pool.shutdownNow();
+            if (endTime == 0) {
+                endTime = System.currentTimeMillis();
+            }
+            // 已提交的块不经过taken，布隆过滤器和不存在缓存会误判为未被使用
+            if (importedRows.get() > 0) {
+                reloadExistence();
+            }
+            running.set(false);
+        }
+    }
+
+    /**
+     * 从文件导入用户
+     *
+     * @param path CSV文件
+     * @param rejectPath 拒绝文件，为空时写入path + ".reject"
+     * @return
+     * @throws IOException
+     */
+    @ManagedOperation(description = "从CSV文件导入用户，失败的行写入拒绝文件")
+    public String importFromFile(String path, String rejectPath) throws IOException {
+        if (rejectPath == null || rejectPath.trim().isEmpty()) {
+            rejectPath = path + ".reject";
+        }
+        Summary summary;
+        try (InputStream in = new FileInputStream(new File(path));
+                OutputStream out = new FileOutputStream(new File(rejectPath))) {
+            summary = importUsers(in, out);
+        }
+        LOG.info("Imported users from {}: {}, rejects in {}", path, summary, rejectPath);
+        return summary.toString();
+    }
+
+    private Future<Chunk> submit(ExecutorService pool, final Chunk chunk, final Columns columns) {
+        return pool.submit(new Callable<Chunk>() {
+            @Override
+            public Chunk call() {
+                validate(chunk, columns);
+                return chunk;
+            }
+        });
+    }
+
+    private static Chunk await(Future<Chunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while importing users", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * 校验一块数据，在校验线程中执行
+     */
+    private void validate(Chunk chunk, Columns columns) {
+        Date now = new Date();
+        Set<String> accounts = new HashSet<String>();
+        Set<String> nicknames = new HashSet<String>();
+        for (Record record : chunk.records) {
+            try {
+                User user = toUser(parseCsv(record.raw), columns);
+                if (user.getAccount() != null && !accounts.add(user.getAccount())) {
+                    record.error = "账号重复";
+                    continue;
+                }
+                if (!nicknames.add(user.getNickname())) {
+                    record.error = "昵称重复";
+                    continue;
+                }
+                user.setCreated(now);
+                user.setUpdated(now);
+                user.setVersion(0);
+                record.user = user;
+            } catch (IllegalArgumentException e) {
+                record.error = e.getMessage();
+            }
+        }
+        // 每块两次查询代替逐行的两次count
+        Set<String> usedAccounts = lowerCase(userDao.queryExistingAccounts(accounts));
+        Set<String> usedNicknames = new HashSet<String>(userDao.queryExistingNicknames(nicknames));
+        for (Record record : chunk.records) {
+            User user = record.user;
+            if (user == null) {
+                continue;
+            }
+            if (user.getAccount() != null && usedAccounts.contains(user.getAccount())) {
+                record.fail("账号已经被使用");
+            } else if (usedNicknames.contains(user.getNickname())) {
+                record.fail("昵称已经被使用");
+            } else {
+                // 在校验线程中直接散列，导入速度受acc.password.iterations影响
+                user.setPassword(passwordEncoder.getHasher().hash(user.getPassword()));
+            }
+        }
+    }
+
+    private static Set<String> lowerCase(List<String> values) {
+        Set<String> set = new HashSet<String>();
+        for (String v : values) {
+            set.add(v.toLowerCase(Locale.ROOT));
+        }
+        return set;
+    }
+
+    /**
+     * 解析并校验一行，格式错误时抛出IllegalArgumentException，消息写入拒绝文件
+     */
+    private User toUser(List<String> fields, Columns columns) {
+        String account = columns.get(fields, "account");
+        String password = columns.get(fields, "password");
+        String nickname = columns.get(fields, "nickname");
+        User user = new User();
+        if (account != null) {
+            if (!UserValidator.isAccount(account)) {
+                throw new IllegalArgumentException("账号格式错误");
+            }
+            account = account.toLowerCase(Locale.ROOT);
+            if (keywordFilter.findInAccount(account) != null) {
+                throw new IllegalArgumentException("账号中不能包含关键字");
+            }
+            user.setAccount(account);
+        }
+        if (!UserValidator.isNickname(nickname)) {
+            throw new IllegalArgumentException("昵称格式错误");
+        }
+        if (keywordFilter.findInNickname(nickname) != null) {
+            throw new IllegalArgumentException("昵称中不能包含关键字");
+        }
+        if (!UserValidator.isPassword(password)) {
+            throw new IllegalArgumentException("密码格式错误");
+        }
+        user.setNickname(nickname);
+        user.setPassword(password);
+        user.setRealName(columns.get(fields, "real_name"));
+        user.setSummary(columns.get(fields, "summary"));
+        user.setGender(toInt(columns.get(fields, "gender"), "性别格式错误"));
+        Integer year = toInt(columns.get(fields, "birth_year"), "生日格式错误");
+        Integer month = toInt(columns.get(fields, "birth_month"), "生日格式错误");
+        Integer day = toInt(columns.get(fields, "birth_day"), "生日格式错误");
+        if (year != null || month != null || day != null) {
+            if (year == null || month == null || day == null
+                    || !UserValidator.isBirthday(year, month, day)) {
+                throw new IllegalArgumentException("生日格式错误");
+            }
+            user.setBirthYear(year);
+            user.setBirthMonth(month);
+            user.setBirthDay(day);
+        }
+        return user;
+    }
+
+    private static Integer toInt(String s, String error) {
+        if (s == null) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(s);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(error);
+        }
+    }
+
+    /**
+     * 写入一块数据，在调用线程中按输入顺序执行
+     */
+    private void write(Chunk chunk, Writer rejectWriter) throws IOException {
+        List<User> users = new ArrayList<User>(chunk.records.size());
+        for (Record record : chunk.records) {
+            if (record.user != null) {
+                users.add(record.user);
+            }
+        }
+        if (!users.isEmpty()) {
+            long id = userIdGenerator.leaseBlock(users.size());
+            for (User user : users) {
+                user.setUserId(id++);
+            }
+            try {
+                userDao.insertBatch(users);
+                importedRows.addAndGet(users.size());
+            } catch (RuntimeException e) {
+                batchFallbacks.incrementAndGet();
+                LOG.warn("Batch insert of {} users failed, retrying one by one: {}",
+                        users.size(), e.getMessage());
+                insertOneByOne(chunk);
+            }
+        }
+        for (Record record : chunk.records) {
+            if (record.error != null) {
+                rejectedRows.incrementAndGet();
+                rejectWriter.write(record.raw);
+                rejectWriter.write(',');
+                writeCsvField(rejectWriter, record.error);
+                rejectWriter.write('\n');
+            }
+        }
+        long read = readRows.get();
+        if (read / LOG_EVERY != (read - chunk.records.size()) / LOG_EVERY) {
+            LOG.info("Imported {} users, rejected {}", importedRows.get(), rejectedRows.get());
+        }
+    }
+
+    private void insertOneByOne(Chunk chunk) {
+        for (Record record : chunk.records) {
+            if (record.user == null) {
+                continue;
+            }
+            try {
+                userDao.insert(record.user);
+                importedRows.incrementAndGet();
+            } catch (DuplicateKeyException e) {
+                String msg = String.valueOf(e.getMostSpecificCause().getMessage())
+                        .toLowerCase(Locale.ROOT);
+                record.fail(msg.contains(UK_ACCOUNT) ? "账号已经被使用" : "昵称已经被使用");
+            } catch (RuntimeException e) {
+                record.fail(String.valueOf(e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * 通知各节点重建账号、昵称存在缓存
+     */
+    private void reloadExistence() {
+        if (userExistenceCache != null) {
+            userExistenceCache.reload();
+        } else if (cacheRedisTemplate != null) {
+            UserExistenceCache.publishReload(cacheRedisTemplate);
+        } else {
+            LOG.warn("No redis configured, call userExistenceCache.reload on every node after import");
+        }
+    }
+
+    private static ThreadFactory daemon(final String name) {
+        final AtomicInteger n = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name + "-" + n.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    /**
+     * 读取一条记录，引号内的换行属于同一条记录
+     *
+     * @param reader
+     * @return 没有更多记录时返回null
+     * @throws IOException
+     */
+    static Record readRecord(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        while (line != null && line.isEmpty()) {
+            line = reader.readLine();
+        }
+        if (line == null) {
+            return null;
+        }
+        StringBuilder raw = null;
+        while (quotes(raw == null ? line : raw) % 2 != 0) {
+            String next = reader.readLine();
+            if (next == null) {
+                break;
+            }
+            if (raw == null) {
+                raw = new StringBuilder(line);
+            }
+            raw.append('\n').append(next);
+        }
+        return new Record(raw == null ? line : raw.toString());
+    }
+
+    private static int quotes(CharSequence s) {
+        int n = 0;
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) == '"') {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * 解析一条CSV记录，空字段为null
+     */
+    static List<String> parseCsv(String raw) {
+        List<String> fields = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean wasQuoted = false;
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < raw.length() && raw.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+                wasQuoted = true;
+            } else if (c == ',') {
+                fields.add(field.length() == 0 && !wasQuoted ? null : field.toString());
+                field.setLength(0);
+                wasQuoted = false;
+            } else if (c != '\r') {
+                field.append(c);
+            }
+        }
+        fields.add(field.length() == 0 && !wasQuoted ? null : field.toString());
+        return fields;
+    }
+
+    private static void writeCsvField(Writer writer, String s) throws IOException {
+        writer.write('"');
+        writer.write(s.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    @ManagedAttribute(description = "是否正在导入")
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    @ManagedAttribute(description = "本次（或上次）已读取行数")
+    public long getReadRows() {
+        return readRows.get();
+    }
+
+    @ManagedAttribute(description = "本次（或上次）已导入行数")
+    public long getImportedRows() {
+        return importedRows.get();
+    }
+
+    @ManagedAttribute(description = "本次（或上次）拒绝行数")
+    public long getRejectedRows() {
+        return rejectedRows.get();
+    }
+
+    @ManagedAttribute(description = "批处理失败后逐行重试的块数")
+    public long getBatchFallbacks() {
+        return batchFallbacks.get();
+    }
+
+    @ManagedAttribute(description = "导入速度（行/秒）")
+    public double getRowsPerSecond() {
+        if (startTime == 0) {
+            return 0D;
+        }
+        long end = endTime == 0 ? System.currentTimeMillis() : endTime;
+        long millis = Math.max(1, end - startTime);
+        return readRows.get() * 1000D / millis;
+    }
+
+    /**
+     * 列名到位置的映射
+     */
+    static class Columns {
+        private final Map<String, Integer> index = new HashMap<String, Integer>();
+
+        Columns(List<String> header) {
+            for (int i = 0; i < header.size(); i++) {
+                String name = header.get(i);
+                if (name != null) {
+                    index.put(name.trim().toLowerCase(Locale.ROOT), i);
+                }
+            }
+            if (!index.containsKey("password") || !index.containsKey("nickname")) {
+                throw new IllegalArgumentException("Columns password and nickname are required");
+            }
+        }
+
+        String get(List<String> fields, String name) {
+            Integer i = index.get(name);
+            if (i == null || i >= fields.size()) {
+                return null;
+            }
+            return fields.get(i);
+        }
+    }
+
+    /**
+     * 输入的一条记录
+     */
+    static class Record {
+        final String raw;
+        /** 校验通过的用户 */
+        User user;
+        /** 拒绝原因 */
+        String error;
+
+        Record(String raw) {
+            this.raw = raw;
+        }
+
+        void fail(String error) {
+            this.error = error;
+            this.user = null;
+        }
+    }
+
+    private static class Chunk {
+        final List<Record> records = new ArrayList<Record>();
+    }
+}
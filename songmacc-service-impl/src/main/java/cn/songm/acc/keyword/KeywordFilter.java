@@ -0,0 +1,188 @@
+package cn.songm.acc.keyword;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * 账号、昵称关键字过滤
+ *
+ * 关键字从文本文件加载，每行一个，#开头为注释。定时检查文件修改时间，
+ * 变化后重新构建自动机并整体替换，校验线程读到的总是一个完整的版本。
+ * 加载失败时继续使用旧版本。
+ *
+ * @author zhangsong
+ *
+ */
+@Component("keywordFilter")
+@ManagedResource(objectName = "cn.songm.acc:type=Keyword,name=keywordFilter")
+public class KeywordFilter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(KeywordFilter.class);
+
+    /** 账号中不能包含的关键字 */
+    @Value("${acc.keyword.account:classpath:keyword/account.txt}")
+    private String accountLocation;
+    /** 昵称中不能包含的关键字 */
+    @Value("${acc.keyword.nickname:classpath:keyword/nickname.txt}")
+    private String nicknameLocation;
+    /** 检查文件变化的间隔（秒），0为不检查 */
+    @Value("${acc.keyword.reload.interval:60}")
+    private long reloadInterval;
+
+    private final ResourceLoader resourceLoader = new DefaultResourceLoader();
+    private final AtomicReference<Dictionary> dictionary = new AtomicReference<Dictionary>(
+            new Dictionary(KeywordMatcher.empty(), KeywordMatcher.empty(), 0L, 0L));
+    private ScheduledExecutorService timer;
+
+    @PostConstruct
+    public void init() throws IOException {
+        reload();
+        if (reloadInterval > 0) {
+            timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "keyword-reload");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            timer.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    reloadIfModified();
+                }
+            }, reloadInterval, reloadInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+    }
+
+    /**
+     * 账号中包含的第一个关键字
+     *
+     * @param account
+     * @return 不包含时返回null
+     */
+    public String findInAccount(String account) {
+        return dictionary.get().account.find(account);
+    }
+
+    /**
+     * 昵称中包含的第一个关键字
+     *
+     * @param nickname
+     * @return 不包含时返回null
+     */
+    public String findInNickname(String nickname) {
+        return dictionary.get().nickname.find(nickname);
+    }
+
+    private void reloadIfModified() {
+        try {
+            Dictionary current = dictionary.get();
+            if (lastModified(accountLocation) != current.accountModified
+                    || lastModified(nicknameLocation) != current.nicknameModified) {
+                reload();
+            }
+        } catch (Exception e) {
+            LOG.warn("Reload keywords failed, keep the previous version", e);
+        }
+    }
+
+    /**
+     * 重新加载关键字
+     *
+     * @throws IOException
+     */
+    @ManagedOperation(description = "重新加载关键字")
+    public synchronized void reload() throws IOException {
+        long accountModified = lastModified(accountLocation);
+        long nicknameModified = lastModified(nicknameLocation);
+        KeywordMatcher account = new KeywordMatcher(load(accountLocation));
+        KeywordMatcher nickname = new KeywordMatcher(load(nicknameLocation));
+        dictionary.set(new Dictionary(account, nickname, accountModified, nicknameModified));
+        LOG.info("Loaded {} account keywords, {} nickname keywords", account.size(), nickname.size());
+    }
+
+    private List<String> load(String location) throws IOException {
+        List<String> words = new ArrayList<String>();
+        Resource resource = resourceLoader.getResource(location);
+        try (InputStream in = resource.getInputStream()) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    words.add(line);
+                }
+            }
+        }
+        return words;
+    }
+
+    private long lastModified(String location) {
+        try {
+            return resourceLoader.getResource(location).lastModified();
+        } catch (IOException e) {
+            // jar包中的资源没有修改时间，不检查变化
+            return 0L;
+        }
+    }
+
+    @ManagedAttribute(description = "账号关键字个数")
+    public int getAccountKeywords() {
+        return dictionary.get().account.size();
+    }
+
+    @ManagedAttribute(description = "昵称关键字个数")
+    public int getNicknameKeywords() {
+        return dictionary.get().nickname.size();
+    }
+
+    /**
+     * 同一时刻加载的账号、昵称关键字
+     */
+    private static class Dictionary {
+        final KeywordMatcher account;
+        final KeywordMatcher nickname;
+        final long accountModified;
+        final long nicknameModified;
+
+        Dictionary(KeywordMatcher account, KeywordMatcher nickname, long accountModified,
+                long nicknameModified) {
+            this.account = account;
+            this.nickname = nickname;
+            this.accountModified = accountModified;
+            this.nicknameModified = nicknameModified;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package cn.songm.acc.keyword;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 多关键字匹配（Aho-Corasick自动机）
+ *
+ * 构建后不可变，可被多个线程同时使用。一次扫描输入即可判断是否包含任意关键字，
+ * 耗时与输入长度成正比，与关键字个数无关。忽略大小写。
+ *
+ * @author zhangsong
+ *
+ */
+public final class KeywordMatcher {
+
+    private static final KeywordMatcher EMPTY = new KeywordMatcher(new ArrayList<String>());
+
+    /** 每个状态的转移字符，升序 */
+    private final char[][] keys;
+    /** 每个状态的转移目标，与keys对应 */
+    private final int[][] targets;
+    /** 失败转移 */
+    private final int[] fail;
+    /** 到达该状态时匹配到的关键字下标（含后缀），-1为没有 */
+    private final int[] output;
+    private final String[] words;
+
+    /**
+     * @param words 关键字，忽略空白和空串
+     */
+    public KeywordMatcher(Collection<String> words) {
+        List<String> list = new ArrayList<String>(words.size());
+        for (String w : words) {
+            if (w != null && !w.trim().isEmpty()) {
+                list.add(w.trim());
+            }
+        }
+        this.words = list.toArray(new String[list.size()]);
+
+        // 1. 构建字典树
+        List<Map<Character, Integer>> trie = new ArrayList<Map<Character, Integer>>();
+        List<Integer> out = new ArrayList<Integer>();
+        trie.add(new TreeMap<Character, Integer>());
+        out.add(-1);
+        for (int i = 0; i < this.words.length; i++) {
+            String w = this.words[i];
+            int s = 0;
+            for (int j = 0; j < w.length(); j++) {
+                char c = Character.toLowerCase(w.charAt(j));
+                Integer next = trie.get(s).get(c);
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<Character, Integer>());
+                    out.add(-1);
+                    trie.get(s).put(c, next);
+                }
+                s = next;
+            }
+            if (out.get(s) < 0) {
+                out.set(s, i);
+            }
+        }
+
+        int n = trie.size();
+        keys = new char[n][];
+        targets = new int[n][];
+        fail = new int[n];
+        output = new int[n];
+        for (int s = 0; s < n; s++) {
+            Map<Character, Integer> edges = trie.get(s);
+            keys[s] = new char[edges.size()];
+            targets[s] = new int[edges.size()];
+            int k = 0;
+            for (Map.Entry<Character, Integer> e : edges.entrySet()) {
+                keys[s][k] = e.getKey();
+                targets[s][k] = e.getValue();
+                k++;
+            }
+            output[s] = out.get(s);
+        }
+
+        // 2. 按层计算失败转移，输出沿失败链继承
+        Deque<Integer> queue = new ArrayDeque<Integer>();
+        for (int t : targets[0]) {
+            fail[t] = 0;
+            queue.add(t);
+        }
+        while (!queue.isEmpty()) {
+            int s = queue.poll();
+            for (int k = 0; k < keys[s].length; k++) {
+                char c = keys[s][k];
+                int t = targets[s][k];
+                int f = fail[s];
+                int g;
+                while ((g = next(f, c)) < 0 && f != 0) {
+                    f = fail[f];
+                }
+                fail[t] = g < 0 || g == t ? 0 : g;
+                if (output[t] < 0) {
+                    output[t] = output[fail[t]];
+                }
+                queue.add(t);
+            }
+        }
+    }
+
+    public static KeywordMatcher empty() {
+        return EMPTY;
+    }
+
+    private int next(int s, char c) {
+        int k = Arrays.binarySearch(keys[s], c);
+        return k < 0 ? -1 : targets[s][k];
+    }
+
+    /**
+     * 查找输入中的第一个关键字
+     *
+     * @param text
+     * @return 最先结束的关键字，不包含时返回null
+     */
+    public String find(CharSequence text) {
+        if (words.length == 0 || text == null) {
+            return null;
+        }
+        int s = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            int g;
+            while ((g = next(s, c)) < 0 && s != 0) {
+                s = fail[s];
+            }
+            s = g < 0 ? 0 : g;
+            if (output[s] >= 0) {
+                return words[output[s]];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 输入中是否包含任意关键字
+     *
+     * @param text
+     * @return
+     */
+    public boolean matches(CharSequence text) {
+        return find(text) != null;
+    }
+
+    /** 关键字个数 */
+    public int size() {
+        return words.length;
+    }
+
+    /** 自动机状态数 */
+    public int states() {
+        return keys.length;
+    }
+}
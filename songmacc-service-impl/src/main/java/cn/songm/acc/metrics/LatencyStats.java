@@ -0,0 +1,110 @@
+package cn.songm.acc.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * 一个统计对象（方法、SQL语句等）的调用次数、异常次数和耗时分布
+ *
+ * 耗时以纳秒记录在HdrHistogram的Recorder中，记录无锁、不创建对象。
+ * 由所属组件定时调用{@link #roll()}取出上一周期的分布，并累加到启动以来的分布中。
+ * 精度为两位有效数字，超过1分钟的耗时按1分钟记录。
+ *
+ * @author zhangsong
+ *
+ */
+public final class LatencyStats {
+
+    private static final long LOWEST = TimeUnit.MICROSECONDS.toNanos(1);
+    private static final long HIGHEST = TimeUnit.MINUTES.toNanos(1);
+    private static final int DIGITS = 2;
+
+    private final String name;
+    private final Recorder recorder = new Recorder(LOWEST, HIGHEST, DIGITS);
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    /** 上一周期的分布 */
+    private volatile Histogram last = new Histogram(LOWEST, HIGHEST, DIGITS);
+    /** 启动以来的分布，只在roll中修改 */
+    private final Histogram total = new Histogram(LOWEST, HIGHEST, DIGITS);
+
+    public LatencyStats(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param nanos 耗时（纳秒）
+     * @param error 是否异常结束
+     */
+    public void record(long nanos, boolean error) {
+        recorder.recordValue(Math.max(LOWEST, Math.min(nanos, HIGHEST)));
+        calls.increment();
+        if (error) {
+            errors.increment();
+        }
+    }
+
+    /**
+     * 结束当前统计周期
+     */
+    public synchronized void roll() {
+        Histogram h = recorder.getIntervalHistogram();
+        total.add(h);
+        last = h;
+    }
+
+    /** 上一周期的分布，只读 */
+    public Histogram getLast() {
+        return last;
+    }
+
+    /** 启动以来的分布（副本） */
+    public synchronized Histogram getTotal() {
+        return total.copy();
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    /**
+     * 报表表头，与{@link #appendTo(StringBuilder, Histogram)}的列对应
+     *
+     * @param sb
+     */
+    public static void appendHeader(StringBuilder sb) {
+        sb.append(String.format(Locale.ROOT, "%-48s %10s %8s %10s %10s %10s %10s %10s%n",
+                "name", "count", "errors", "p50(us)", "p90(us)", "p99(us)", "p999(us)", "max(us)"));
+    }
+
+    /**
+     * 报表一行：周期内次数、启动以来的异常次数和周期内耗时分位数（微秒）
+     *
+     * @param sb
+     * @param h
+     */
+    public void appendTo(StringBuilder sb, Histogram h) {
+        sb.append(String.format(Locale.ROOT, "%-48s %10d %8d %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                name, h.getTotalCount(), getErrors(),
+                micros(h.getValueAtPercentile(50)), micros(h.getValueAtPercentile(90)),
+                micros(h.getValueAtPercentile(99)), micros(h.getValueAtPercentile(99.9)),
+                micros(h.getMaxValue())));
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000D;
+    }
+}
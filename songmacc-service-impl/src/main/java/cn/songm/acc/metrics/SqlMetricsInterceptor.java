@@ -0,0 +1,392 @@
+package cn.songm.acc.metrics;
+
+import java.lang.reflect.Proxy;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.sql.DataSource;
+
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.SystemMetaObject;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import com.alibaba.druid.pool.DruidDataSource;
+
+/**
+ * SQL语句监控（MyBatis插件）
+ *
+ * 在StatementHandler上按语句ID记录执行次数、异常次数、返回行数和耗时分布，
+ * 耗时只包含执行SQL和映射结果，不包含从连接池取连接的时间；
+ * 取连接的等待从DruidDataSource读取，与语句统计一起输出，用于区分慢查询和连接池争用。
+ * 超过阈值的语句以WARN输出SQL和参数，敏感参数以***代替。
+ * 批处理（BatchExecutor）的语句在flush时执行，不在这里统计。
+ * 传入ResultHandler的流式查询（导出、重建过滤器）包装该Handler计数行数，
+ * 耗时取决于调用方的处理速度，不计入耗时分布，也不输出慢语句。
+ * 在app-acc-mybatis.xml中定义，与sqlSessionFactory一起被各上下文导入。
+ *
+ * @author zhangsong
+ *
+ */
+@ManagedResource(objectName = "cn.songm.acc:type=Metrics,name=sqlMetrics")
+@Intercepts({
+        @Signature(type = StatementHandler.class, method = "query", args = { Statement.class, ResultHandler.class }),
+        @Signature(type = StatementHandler.class, method = "update", args = { Statement.class }) })
+public class SqlMetricsInterceptor implements Interceptor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SqlMetricsInterceptor.class);
+
+    /** 慢语句阈值（毫秒），0为不输出 */
+    @Value("${acc.sql.slow:200}")
+    private long slow;
+    /** 需要遮盖的参数名，参数名包含其中任一项即遮盖 */
+    @Value("${acc.trace.mask:password,oldPsw,newPsw,vcode}")
+    private String mask;
+    /** 统计周期（秒） */
+    @Value("${acc.metrics.interval:60}")
+    private long interval;
+
+    @Resource(name = "dataSource")
+    private DataSource dataSource;
+
+    private final ConcurrentMap<String, SqlStats> statements = new ConcurrentHashMap<String, SqlStats>();
+    private String[] masked;
+    private ScheduledExecutorService roller;
+
+    /** Druid连接池，其它数据源为null */
+    private DruidDataSource pool;
+    /** 连接池等待次数和时间，上一周期结束时的值 */
+    private long poolWaitCount;
+    private long poolWaitMillis;
+    /** 连接池上一周期的等待次数和平均等待时间 */
+    private volatile long lastPoolWaitCount;
+    private volatile double lastPoolWaitAvg;
+
+    @PostConstruct
+    public void init() {
+        masked = mask.trim().toLowerCase(Locale.ROOT).split("\\s*,\\s*");
+        pool = dataSource instanceof DruidDataSource ? (DruidDataSource) dataSource : null;
+        if (pool != null) {
+            poolWaitCount = pool.getNotEmptyWaitCount();
+            poolWaitMillis = pool.getNotEmptyWaitMillis();
+        }
+        roller = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "sql-metrics");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        roller.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                roll();
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        roller.shutdownNow();
+    }
+
+    private void roll() {
+        for (SqlStats s : statements.values()) {
+            s.stats.roll();
+        }
+        if (pool != null) {
+            long count = pool.getNotEmptyWaitCount();
+            long millis = pool.getNotEmptyWaitMillis();
+            long n = count - poolWaitCount;
+            lastPoolWaitCount = n;
+            lastPoolWaitAvg = n == 0 ? 0D : (double) (millis - poolWaitMillis) / n;
+            poolWaitCount = count;
+            poolWaitMillis = millis;
+        }
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        StatementHandler handler = (StatementHandler) invocation.getTarget();
+        MappedStatement ms = mappedStatement(handler);
+        SqlStats s = statements.get(ms.getId());
+        if (s == null) {
+            s = register(ms.getId());
+        }
+        if (invocation.getArgs().length > 1 && invocation.getArgs()[1] != null) {
+            return stream(invocation, s);
+        }
+        boolean error = true;
+        int rows = 0;
+        long start = System.nanoTime();
+        try {
+            Object result = invocation.proceed();
+            if (result instanceof Collection) {
+                rows = ((Collection<?>) result).size();
+            } else if (result instanceof Integer) {
+                rows = (Integer) result;
+            }
+            error = false;
+            return result;
+        } finally {
+            long nanos = System.nanoTime() - start;
+            s.stats.record(nanos, error);
+            s.rows.add(rows);
+            if (slow > 0 && nanos >= TimeUnit.MILLISECONDS.toNanos(slow)) {
+                BoundSql boundSql = handler.getBoundSql();
+                LOG.warn("Slow SQL {} {} ms, rows: {}, error: {}, sql: {} params: {}", s.stats.getName(),
+                        TimeUnit.NANOSECONDS.toMillis(nanos), rows, error,
+                        boundSql.getSql().replaceAll("\\s+", " "), params(ms.getConfiguration(), boundSql));
+            }
+        }
+    }
+
+    /**
+     * 流式查询只计次数和行数
+     */
+    private Object stream(Invocation invocation, SqlStats s) throws Throwable {
+        @SuppressWarnings("unchecked")
+        final ResultHandler<Object> handler = (ResultHandler<Object>) invocation.getArgs()[1];
+        final long[] rows = new long[1];
+        invocation.getArgs()[1] = new ResultHandler<Object>() {
+            @Override
+            public void handleResult(ResultContext<? extends Object> context) {
+                rows[0]++;
+                handler.handleResult(context);
+            }
+        };
+        try {
+            return invocation.proceed();
+        } finally {
+            s.streams.increment();
+            s.rows.add(rows[0]);
+        }
+    }
+
+    private static MappedStatement mappedStatement(StatementHandler handler) {
+        MetaObject meta = SystemMetaObject.forObject(handler);
+        // 被其它插件代理时取出原对象
+        while (Proxy.isProxyClass(meta.getOriginalObject().getClass())) {
+            meta = SystemMetaObject.forObject(meta.getValue("h.target"));
+        }
+        // RoutingStatementHandler委托给具体的StatementHandler
+        return (MappedStatement) meta.getValue("delegate.mappedStatement");
+    }
+
+    private SqlStats register(String id) {
+        // 命名空间是DAO实现类的全名，只保留类名
+        int dot = id.lastIndexOf('.');
+        String name = dot > 0 ? id.substring(id.lastIndexOf('.', dot - 1) + 1) : id;
+        SqlStats s = new SqlStats(new LatencyStats(name));
+        SqlStats old = statements.putIfAbsent(id, s);
+        return old == null ? s : old;
+    }
+
+    /**
+     * 按DefaultParameterHandler的方式取出绑定参数
+     *
+     * @param configuration
+     * @param boundSql
+     * @return
+     */
+    String params(Configuration configuration, BoundSql boundSql) {
+        Object param = boundSql.getParameterObject();
+        MetaObject meta = null;
+        StringBuilder sb = new StringBuilder("[");
+        for (ParameterMapping pm : boundSql.getParameterMappings()) {
+            if (pm.getMode() == ParameterMode.OUT) {
+                continue;
+            }
+            String property = pm.getProperty();
+            Object value;
+            if (boundSql.hasAdditionalParameter(property)) {
+                value = boundSql.getAdditionalParameter(property);
+            } else if (param == null) {
+                value = null;
+            } else if (configuration.getTypeHandlerRegistry().hasTypeHandler(param.getClass())) {
+                value = param;
+            } else {
+                if (meta == null) {
+                    meta = configuration.newMetaObject(param);
+                }
+                value = meta.getValue(property);
+            }
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            sb.append(property).append('=').append(isMasked(property) && value != null ? "***" : value);
+        }
+        return sb.append(']').toString();
+    }
+
+    private boolean isMasked(String property) {
+        String p = property.toLowerCase(Locale.ROOT);
+        for (String m : masked) {
+            if (!m.isEmpty() && p.contains(m)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Object plugin(Object target) {
+        return target instanceof StatementHandler ? Plugin.wrap(target, this) : target;
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+    }
+
+    private List<SqlStats> sorted() {
+        List<SqlStats> list = new ArrayList<SqlStats>(statements.values());
+        list.sort(new Comparator<SqlStats>() {
+            @Override
+            public int compare(SqlStats a, SqlStats b) {
+                return a.stats.getName().compareTo(b.stats.getName());
+            }
+        });
+        return list;
+    }
+
+    @ManagedOperation(description = "上一统计周期各语句的执行次数和耗时分位数，以及连接池等待")
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        LatencyStats.appendHeader(sb);
+        for (SqlStats s : sorted()) {
+            s.stats.appendTo(sb, s.stats.getLast());
+        }
+        appendPool(sb);
+        return sb.toString();
+    }
+
+    @ManagedOperation(description = "启动以来各语句的执行次数和耗时分位数（不含当前周期），以及连接池等待")
+    public String reportTotal() {
+        StringBuilder sb = new StringBuilder();
+        LatencyStats.appendHeader(sb);
+        for (SqlStats s : sorted()) {
+            s.stats.appendTo(sb, s.stats.getTotal());
+        }
+        appendPool(sb);
+        return sb.toString();
+    }
+
+    private void appendPool(StringBuilder sb) {
+        if (pool == null) {
+            return;
+        }
+        sb.append(String.format(Locale.ROOT,
+                "pool: active=%d/%d, waiting=%d, lastWaits=%d, lastWaitAvg=%.2fms, waits=%d, waitMillis=%d%n",
+                pool.getActiveCount(), pool.getMaxActive(), pool.getWaitThreadCount(), lastPoolWaitCount,
+                lastPoolWaitAvg, pool.getNotEmptyWaitCount(), pool.getNotEmptyWaitMillis()));
+    }
+
+    @ManagedAttribute(description = "各语句启动以来的执行次数和返回行数（更新语句为影响行数，含流式查询）")
+    public Map<String, String> getRows() {
+        Map<String, String> result = new TreeMap<String, String>();
+        for (SqlStats s : statements.values()) {
+            long calls = s.stats.getCalls() + s.streams.sum();
+            long rows = s.rows.sum();
+            result.put(s.stats.getName(), String.format(Locale.ROOT, "calls=%d, rows=%d, rowsPerCall=%.1f",
+                    calls, rows, calls == 0 ? 0D : (double) rows / calls));
+        }
+        return result;
+    }
+
+    @ManagedAttribute(description = "语句执行总次数")
+    public long getCallCount() {
+        long n = 0;
+        for (SqlStats s : statements.values()) {
+            n += s.stats.getCalls() + s.streams.sum();
+        }
+        return n;
+    }
+
+    @ManagedAttribute(description = "语句异常总次数")
+    public long getErrorCount() {
+        long n = 0;
+        for (SqlStats s : statements.values()) {
+            n += s.stats.getErrors();
+        }
+        return n;
+    }
+
+    @ManagedAttribute(description = "连接池正在使用的连接数")
+    public int getPoolActive() {
+        return pool == null ? 0 : pool.getActiveCount();
+    }
+
+    @ManagedAttribute(description = "连接池正在等待连接的线程数")
+    public int getPoolWaiting() {
+        return pool == null ? 0 : pool.getWaitThreadCount();
+    }
+
+    @ManagedAttribute(description = "连接池上一周期的等待次数")
+    public long getPoolLastWaitCount() {
+        return lastPoolWaitCount;
+    }
+
+    @ManagedAttribute(description = "连接池上一周期的平均等待时间（毫秒）")
+    public double getPoolLastWaitAvg() {
+        return lastPoolWaitAvg;
+    }
+
+    @ManagedAttribute(description = "慢语句阈值（毫秒）")
+    public long getSlow() {
+        return slow;
+    }
+
+    @ManagedAttribute(description = "慢语句阈值（毫秒），0为不输出")
+    public void setSlow(long slow) {
+        this.slow = Math.max(0, slow);
+    }
+
+    /**
+     * 一条语句的耗时统计和返回行数
+     */
+    private static class SqlStats {
+        final LatencyStats stats;
+        final LongAdder rows = new LongAdder();
+        /** 流式查询次数，不在stats中 */
+        final LongAdder streams = new LongAdder();
+
+        SqlStats(LatencyStats stats) {
+            this.stats = stats;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package cn.songm.acc.password;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import cn.songm.common.utils.CodeUtils;
+
+/**
+ * 旧的MD5散列，32位十六进制，没有盐
+ *
+ * 只用于校验已有的密码，校验通过后重新散列为当前算法。
+ *
+ * @author zhangsong
+ *
+ */
+public class Md5PasswordHasher implements PasswordHasher {
+
+    @Override
+    public String hash(String password) {
+        return CodeUtils.md5(password);
+    }
+
+    @Override
+    public boolean supports(String hashed) {
+        if (hashed == null || hashed.length() != 32) {
+            return false;
+        }
+        for (int i = 0; i < hashed.length(); i++) {
+            if (Character.digit(hashed.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean matches(String password, String hashed) {
+        return MessageDigest.isEqual(hash(password).toLowerCase().getBytes(StandardCharsets.US_ASCII),
+                hashed.toLowerCase().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    public boolean needsRehash(String hashed) {
+        return true;
+    }
+}
@@ -0,0 +1,260 @@
+package cn.songm.acc.password;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import cn.songm.acc.service.UserError;
+import cn.songm.common.service.ServiceException;
+
+/**
+ * 密码散列与校验
+ *
+ * 新密码使用PBKDF2，旧的MD5散列仍可校验，登入成功后在后台重新散列。
+ * PBKDF2计算在独立的线程池中执行，线程数默认等于CPU核数，等待队列有上限：
+ * 登入高峰时Dubbo线程最多等待timeout毫秒，队列满或超时立即返回“服务繁忙”，
+ * 不会让所有Dubbo线程都卡在散列计算上。
+ * 后台重新散列与登入共用线程池，队列中已有较多等待的任务时放弃，不占用登入的队列位置。
+ *
+ * @author zhangsong
+ *
+ */
+@Component("passwordEncoder")
+@ManagedResource(objectName = "cn.songm.acc:type=Password,name=passwordEncoder")
+public class PasswordEncoder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PasswordEncoder.class);
+
+    /** PBKDF2迭代次数 */
+    @Value("${acc.password.iterations:10000}")
+    private int iterations;
+    /** 散列线程数，0为CPU核数 */
+    @Value("${acc.password.threads:0}")
+    private int threads;
+    /** 等待散列的最大请求数 */
+    @Value("${acc.password.queue:200}")
+    private int queueSize;
+    /** 调用方等待散列结果的超时时长（毫秒） */
+    @Value("${acc.password.timeout:3000}")
+    private long timeout;
+    /** 队列中等待的任务数达到该值时放弃后台重新散列 */
+    @Value("${acc.password.rehashQueue:20}")
+    private int rehashQueue;
+
+    private Pbkdf2PasswordHasher current;
+    private Md5PasswordHasher legacy;
+    private List<PasswordHasher> hashers;
+    ThreadPoolExecutor executor;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder rehashed = new LongAdder();
+    private final LongAdder rehashSkipped = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        current = new Pbkdf2PasswordHasher(iterations);
+        legacy = new Md5PasswordHasher();
+        hashers = Arrays.<PasswordHasher>asList(current, legacy);
+        int n = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        final AtomicInteger seq = new AtomicInteger();
+        executor = new ThreadPoolExecutor(n, n, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "password-hash-" + seq.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 用当前算法散列新密码
+     *
+     * @param password
+     * @return
+     * @throws ServiceException 散列线程池繁忙
+     */
+    public String hash(final String password) throws ServiceException {
+        return call(new Callable<String>() {
+            @Override
+            public String call() {
+                return current.hash(password);
+            }
+        });
+    }
+
+    /**
+     * 校验密码，散列值格式不认识时返回false
+     *
+     * @param password
+     * @param hashed
+     * @return
+     * @throws ServiceException 散列线程池繁忙
+     */
+    public boolean matches(final String password, final String hashed) throws ServiceException {
+        if (password == null || hashed == null) {
+            return false;
+        }
+        final PasswordHasher hasher = find(hashed);
+        if (hasher == null) {
+            return false;
+        }
+        // MD5很快，不必排队
+        if (hasher == legacy) {
+            return legacy.matches(password, hashed);
+        }
+        return call(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return hasher.matches(password, hashed);
+            }
+        });
+    }
+
+    /**
+     * 散列值是否需要升级为当前算法和参数
+     *
+     * @param hashed
+     * @return
+     */
+    public boolean needsRehash(String hashed) {
+        PasswordHasher hasher = find(hashed);
+        return hasher == null || hasher.needsRehash(hashed);
+    }
+
+    /**
+     * 在后台重新散列已校验通过的密码，线程池繁忙时放弃，下次登入再试
+     *
+     * @param password
+     * @param save 保存新的散列值
+     */
+    public void rehash(final String password, final Consumer<String> save) {
+        // 旧散列用户集中登入时，每次成功都会加一个任务，不限制会挤满队列使登入被拒绝
+        if (executor.getQueue().size() >= rehashQueue) {
+            rehashSkipped.increment();
+            return;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        save.accept(current.hash(password));
+                        rehashed.increment();
+                    } catch (RuntimeException e) {
+                        LOG.warn("Rehash password failed: {}", e.getMessage());
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rehashSkipped.increment();
+        }
+    }
+
+    /**
+     * 当前算法，在调用线程中直接计算，供批量导入等自带线程池的场景使用
+     *
+     * @return
+     */
+    public PasswordHasher getHasher() {
+        return current;
+    }
+
+    private PasswordHasher find(String hashed) {
+        for (PasswordHasher h : hashers) {
+            if (h.supports(hashed)) {
+                return h;
+            }
+        }
+        return null;
+    }
+
+    private <T> T call(Callable<T> task) throws ServiceException {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new ServiceException(UserError.ACC_118.getErrCode(), "服务繁忙，请稍后重试");
+        }
+        try {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            timeouts.increment();
+            throw new ServiceException(UserError.ACC_118.getErrCode(), "服务繁忙，请稍后重试");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @ManagedAttribute(description = "PBKDF2迭代次数")
+    public int getIterations() {
+        return iterations;
+    }
+
+    @ManagedAttribute(description = "正在散列的任务数")
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    @ManagedAttribute(description = "等待散列的任务数")
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    @ManagedAttribute(description = "队列满被拒绝的次数")
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    @ManagedAttribute(description = "等待超时次数")
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    @ManagedAttribute(description = "登入后重新散列的次数")
+    public long getRehashedCount() {
+        return rehashed.sum();
+    }
+
+    @ManagedAttribute(description = "线程池繁忙放弃重新散列的次数")
+    public long getRehashSkippedCount() {
+        return rehashSkipped.sum();
+    }
+}
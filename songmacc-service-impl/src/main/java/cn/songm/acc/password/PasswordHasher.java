@@ -0,0 +1,45 @@
+package cn.songm.acc.password;
+
+/**
+ * 密码散列算法
+ *
+ * 每种算法的散列值格式可以互相区分，由{@link PasswordEncoder}根据格式选择算法校验。
+ *
+ * @author zhangsong
+ *
+ */
+public interface PasswordHasher {
+
+    /**
+     * 计算密码的散列值
+     *
+     * @param password 明文密码
+     * @return 带格式标识的散列值
+     */
+    String hash(String password);
+
+    /**
+     * 是否为本算法生成的散列值
+     *
+     * @param hashed
+     * @return
+     */
+    boolean supports(String hashed);
+
+    /**
+     * 校验明文密码
+     *
+     * @param password 明文密码
+     * @param hashed 保存的散列值，supports为true
+     * @return
+     */
+    boolean matches(String password, String hashed);
+
+    /**
+     * 散列值是否比当前设置弱，需要重新计算
+     *
+     * @param hashed 保存的散列值，supports为true
+     * @return
+     */
+    boolean needsRehash(String hashed);
+}
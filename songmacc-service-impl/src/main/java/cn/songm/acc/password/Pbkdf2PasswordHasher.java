@@ -0,0 +1,92 @@
+package cn.songm.acc.password;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * PBKDF2-HMAC-SHA256散列
+ *
+ * 格式：$pbkdf2-sha256$迭代次数$盐$散列值，盐和散列值为不带填充的Base64。
+ * 迭代次数保存在散列值中，调整设置后旧散列仍可校验，并在下次登入时升级。
+ *
+ * @author zhangsong
+ *
+ */
+public class Pbkdf2PasswordHasher implements PasswordHasher {
+
+    public static final String PREFIX = "$pbkdf2-sha256$";
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private final int iterations;
+    private final SecureRandom random = new SecureRandom();
+
+    public Pbkdf2PasswordHasher(int iterations) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.iterations = iterations;
+    }
+
+    @Override
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        byte[] hash = pbkdf2(password, salt, iterations);
+        Base64.Encoder b64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + iterations + '$' + b64.encodeToString(salt) + '$' + b64.encodeToString(hash);
+    }
+
+    @Override
+    public boolean supports(String hashed) {
+        return hashed != null && hashed.startsWith(PREFIX);
+    }
+
+    @Override
+    public boolean matches(String password, String hashed) {
+        String[] parts = hashed.substring(PREFIX.length()).split("\\$");
+        if (parts.length != 3) {
+            return false;
+        }
+        try {
+            int n = Integer.parseInt(parts[0]);
+            byte[] salt = Base64.getDecoder().decode(parts[1]);
+            byte[] expected = Base64.getDecoder().decode(parts[2]);
+            return n > 0 && MessageDigest.isEqual(expected, pbkdf2(password, salt, n));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean needsRehash(String hashed) {
+        int end = hashed.indexOf('$', PREFIX.length());
+        try {
+            return end < 0 || Integer.parseInt(hashed.substring(PREFIX.length(), end)) < iterations;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package cn.songm.acc.redis;
 
+import java.util.Collection;
+import java.util.Map;
+
 import cn.songm.acc.entity.User;
 import cn.songm.common.redis.BaseRedis;
 
@@ -17,6 +20,21 @@ public interface UserRedis extends BaseRedis<User> {
      */
     User read(Long uid);
 
+    /**
+     * 批量读取
+     * 
+     * @param uids
+     * @return 以用户ID为键，只包含命中的用户
+     */
+    Map<Long, User> readAll(Collection<Long> uids);
+
+    /**
+     * 批量保存
+     * 
+     * @param users
+     */
+    void saveAll(Collection<User> users);
+
     /**
      * @param uid
      */
@@ -0,0 +1,31 @@
+package cn.songm.acc.redis;
+
+import cn.songm.acc.entity.Verification;
+
+/**
+ * 验证码存储（Redis）
+ *
+ * @author zhangsong
+ *
+ */
+public interface VerificationRedis {
+
+    /**
+     * 保存验证码，同一目标只保留最新的一个，到期后Redis自动删除
+     *
+     * @param ver target、vcode、expire（秒）必填
+     */
+    void save(Verification ver);
+
+    /**
+     * 校验并删除验证码，一次Redis调用内完成，同一个验证码只能使用一次
+     *
+     * 不论是否正确都会删除，猜错一次就需要重新获取。
+     *
+     * @param target
+     * @param vcode
+     * @return 验证码存在且一致时返回true
+     */
+    boolean consume(String target, String vcode);
+
+}
@@ -0,0 +1,169 @@
+package cn.songm.acc.redis.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Resource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Repository;
+
+import cn.songm.acc.entity.User;
+import cn.songm.acc.redis.UserRedis;
+import cn.songm.common.redis.BaseRedisImpl;
+
+/**
+ * 用户信息缓存（Redis）
+ *
+ * Redis不可用时按未命中处理，调用方回源数据库。
+ *
+ * @author zhangsong
+ *
+ */
+@Repository("userRedis")
+@ManagedResource(objectName = "cn.songm.acc:type=Cache,name=userRedis")
+public class UserRedisImpl extends BaseRedisImpl<User> implements UserRedis {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UserRedisImpl.class);
+
+    private static final String KEY_PREFIX = "acc:user:";
+
+    @Resource(name = "cacheRedisTemplate")
+    private RedisTemplate<String, User> cacheRedisTemplate;
+
+    /** 缓存有效时长（秒） */
+    @Value("${acc.cache.user.ttl:1800}")
+    private long ttl;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    private String key(Long uid) {
+        return KEY_PREFIX + uid;
+    }
+
+    @Override
+    public void save(User user) {
+        try {
+            cacheRedisTemplate.opsForValue().set(key(user.getUserId()), user, ttl, TimeUnit.SECONDS);
+        } catch (RuntimeException e) {
+            errors.increment();
+            LOG.warn("Cache user {} failed: {}", user.getUserId(), e.getMessage());
+        }
+    }
+
+    @Override
+    public User read(Long uid) {
+        User user = null;
+        try {
+            user = cacheRedisTemplate.opsForValue().get(key(uid));
+        } catch (RuntimeException e) {
+            errors.increment();
+            LOG.warn("Read cached user {} failed: {}", uid, e.getMessage());
+        }
+        if (user == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return user;
+    }
+
+    @Override
+    public Map<Long, User> readAll(Collection<Long> uids) {
+        Map<Long, User> result = new HashMap<Long, User>();
+        if (uids.isEmpty()) {
+            return result;
+        }
+        List<Long> ids = new ArrayList<Long>(uids);
+        List<String> keys = new ArrayList<String>(ids.size());
+        for (Long uid : ids) {
+            keys.add(key(uid));
+        }
+        try {
+            List<User> values = cacheRedisTemplate.opsForValue().multiGet(keys);
+            for (int i = 0; i < ids.size(); i++) {
+                User user = values.get(i);
+                if (user != null) {
+                    result.put(ids.get(i), user);
+                }
+            }
+        } catch (RuntimeException e) {
+            errors.increment();
+            LOG.warn("Read {} cached users failed: {}", ids.size(), e.getMessage());
+        }
+        hits.add(result.size());
+        misses.add(ids.size() - result.size());
+        return result;
+    }
+
+    @Override
+    public void saveAll(final Collection<User> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+        try {
+            cacheRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @SuppressWarnings("unchecked")
+                @Override
+                public <K, V> Object execute(RedisOperations<K, V> operations)
+                        throws DataAccessException {
+                    RedisOperations<String, User> ops = (RedisOperations<String, User>) operations;
+                    for (User user : users) {
+                        ops.opsForValue().set(key(user.getUserId()), user, ttl, TimeUnit.SECONDS);
+                    }
+                    return null;
+                }
+            });
+        } catch (RuntimeException e) {
+            errors.increment();
+            LOG.warn("Cache {} users failed: {}", users.size(), e.getMessage());
+        }
+    }
+
+    @Override
+    public void delete(Long uid) {
+        try {
+            cacheRedisTemplate.delete(key(uid));
+        } catch (RuntimeException e) {
+            errors.increment();
+            LOG.warn("Evict cached user {} failed: {}", uid, e.getMessage());
+        }
+    }
+
+    @ManagedAttribute(description = "缓存命中次数")
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    @ManagedAttribute(description = "缓存未命中次数（即数据库读取次数）")
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @ManagedAttribute(description = "Redis访问异常次数")
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    @ManagedAttribute(description = "缓存命中率")
+    public double getHitRatio() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0D : (double) h / total;
+    }
+}
@@ -0,0 +1,107 @@
+package cn.songm.acc.redis.impl;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Resource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Repository;
+
+import cn.songm.acc.entity.Verification;
+import cn.songm.acc.redis.VerificationRedis;
+
+/**
+ * 验证码存储（Redis）
+ *
+ * 每个目标一个键，值为验证码，有效期用Redis的过期时间。
+ * 校验用Lua脚本在服务端完成读取、删除和比较，并发的两次校验只有一次能成功。
+ * Redis不可用时校验按失败处理。
+ *
+ * @author zhangsong
+ *
+ */
+@Repository("verificationRedis")
+@ManagedResource(objectName = "cn.songm.acc:type=Cache,name=verificationRedis")
+public class VerificationRedisImpl implements VerificationRedis {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VerificationRedisImpl.class);
+
+    private static final String KEY_PREFIX = "acc:ver:";
+
+    /** 取出并删除，返回是否一致 */
+    private static final RedisScript<Long> CONSUME = new DefaultRedisScript<Long>(
+            "local v = redis.call('GET', KEYS[1]) "
+            + "if not v then return 0 end "
+            + "redis.call('DEL', KEYS[1]) "
+            + "if v == ARGV[1] then return 1 end "
+            + "return 0", Long.class);
+
+    @Resource(name = "verifyRedisTemplate")
+    private StringRedisTemplate verifyRedisTemplate;
+
+    private final LongAdder saved = new LongAdder();
+    private final LongAdder passed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    private String key(String target) {
+        return KEY_PREFIX + target;
+    }
+
+    @Override
+    public void save(Verification ver) {
+        try {
+            verifyRedisTemplate.opsForValue().set(key(ver.getTarget()), ver.getVcode(),
+                    ver.getExpire(), TimeUnit.SECONDS);
+            saved.increment();
+        } catch (RuntimeException e) {
+            errors.increment();
+            LOG.warn("Save verification {} failed: {}", ver.getTarget(), e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean consume(String target, String vcode) {
+        Long r = null;
+        try {
+            r = verifyRedisTemplate.execute(CONSUME, Collections.singletonList(key(target)), vcode);
+        } catch (RuntimeException e) {
+            errors.increment();
+            LOG.warn("Check verification {} failed: {}", target, e.getMessage());
+        }
+        if (r != null && r == 1L) {
+            passed.increment();
+            return true;
+        }
+        failed.increment();
+        return false;
+    }
+
+    @ManagedAttribute(description = "保存的验证码个数")
+    public long getSavedCount() {
+        return saved.sum();
+    }
+
+    @ManagedAttribute(description = "校验通过次数")
+    public long getPassedCount() {
+        return passed.sum();
+    }
+
+    @ManagedAttribute(description = "校验失败次数（含已过期和不存在）")
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    @ManagedAttribute(description = "Redis访问异常次数")
+    public long getErrorCount() {
+        return errors.sum();
+    }
+}
@@ -0,0 +1,157 @@
+package cn.songm.acc.sequence;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 号段ID分配器
+ *
+ * 每次从序列表租用一段连续的ID（step个），在内存中无锁分配。
+ * 当前号段用掉一定比例后在后台预取下一段，号段用完时切换。
+ * 号段由数据库原子分配，多个节点、重启后都不会重复；重启会丢弃未用完的ID。
+ *
+ * @author zhangsong
+ *
+ */
+public class SegmentIdAllocator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SegmentIdAllocator.class);
+
+    /**
+     * 号段加载
+     */
+    public interface SegmentLoader {
+
+        /**
+         * 租用step个ID
+         *
+         * @param step
+         * @return 号段中最大的ID
+         */
+        long lease(int step);
+    }
+
+    private final String name;
+    private final int step;
+    private final int prefetchRemaining;
+    private final SegmentLoader loader;
+    private final ExecutorService prefetcher;
+
+    private volatile Segment current;
+    private Future<Segment> pending;
+
+    /**
+     * @param name
+     *            序列名称
+     * @param step
+     *            每次租用的ID个数
+     * @param prefetchRatio
+     *            剩余比例低于该值时预取下一段（0~1）
+     * @param loader
+     */
+    public SegmentIdAllocator(final String name, int step, double prefetchRatio,
+            SegmentLoader loader) {
+        if (step <= 0 || prefetchRatio < 0 || prefetchRatio >= 1) {
+            throw new IllegalArgumentException();
+        }
+        this.name = name;
+        this.step = step;
+        this.prefetchRemaining = (int) (step * prefetchRatio);
+        this.loader = loader;
+        // 初始为空号段，第一次分配时加载
+        this.current = new Segment(1, 0, 1);
+        this.prefetcher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "seq-prefetch-" + name);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * 获取下一个ID
+     *
+     * @return
+     */
+    public long nextId() {
+        for (;;) {
+            Segment seg = current;
+            long id = seg.next.getAndIncrement();
+            if (id <= seg.max) {
+                // 只有拿到预取位置的线程触发预取
+                if (id == seg.prefetchAt) {
+                    prefetch();
+                }
+                return id;
+            }
+            switchSegment(seg);
+        }
+    }
+
+    private synchronized void prefetch() {
+        if (pending == null) {
+            pending = prefetcher.submit(new Callable<Segment>() {
+                @Override
+                public Segment call() throws Exception {
+                    return load();
+                }
+            });
+        }
+    }
+
+    private synchronized void switchSegment(Segment exhausted) {
+        if (current != exhausted) {
+            return;
+        }
+        Segment seg = null;
+        if (pending != null) {
+            try {
+                seg = pending.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while loading segment " + name, e);
+            } catch (ExecutionException e) {
+                LOG.warn("Prefetch segment {} failed, loading synchronously", name, e.getCause());
+            } finally {
+                pending = null;
+            }
+        }
+        if (seg == null) {
+            seg = load();
+        }
+        current = seg;
+    }
+
+    private Segment load() {
+        long max = loader.lease(step);
+        long min = max - step + 1;
+        LOG.info("Leased segment {} [{}, {}]", name, min, max);
+        return new Segment(min, max, max - prefetchRemaining);
+    }
+
+    public void shutdown() {
+        prefetcher.shutdownNow();
+    }
+
+    private static class Segment {
+        final AtomicLong next;
+        final long max;
+        final long prefetchAt;
+
+        Segment(long min, long max, long prefetchAt) {
+            this.next = new AtomicLong(min);
+            this.max = max;
+            this.prefetchAt = Math.max(min, prefetchAt);
+        }
+    }
+}
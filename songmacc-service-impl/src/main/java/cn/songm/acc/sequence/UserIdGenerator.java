@@ -0,0 +1,89 @@
+package cn.songm.acc.sequence;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import cn.songm.acc.dao.UserDao;
+
+/**
+ * 用户ID生成器
+ *
+ * 号段在独立事务中租用，注册事务回滚不会导致号段被重复分配。
+ *
+ * @author zhangsong
+ *
+ */
+@Component("userIdGenerator")
+public class UserIdGenerator {
+
+    public static final String SEQ_NAME = "acc_user_id_seq";
+
+    @Autowired
+    private UserDao userDao;
+    @Resource(name = "transactionManager")
+    private PlatformTransactionManager transactionManager;
+
+    /** 每次租用的ID个数 */
+    @Value("${acc.seq.user.step:1000}")
+    private int step;
+    /** 剩余比例低于该值时预取 */
+    @Value("${acc.seq.user.prefetchRatio:0.2}")
+    private double prefetchRatio;
+
+    private TransactionTemplate tx;
+    private SegmentIdAllocator allocator;
+
+    @PostConstruct
+    public void init() {
+        tx = new TransactionTemplate(transactionManager);
+        tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        allocator = new SegmentIdAllocator(SEQ_NAME, step, prefetchRatio,
+                new SegmentIdAllocator.SegmentLoader() {
+                    @Override
+                    public long lease(int step) {
+                        return UserIdGenerator.this.lease(step);
+                    }
+                });
+    }
+
+    private long lease(final int size) {
+        return tx.execute(new TransactionCallback<Long>() {
+            @Override
+            public Long doInTransaction(TransactionStatus status) {
+                return userDao.leaseSequence(SEQ_NAME, size);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        allocator.shutdown();
+    }
+
+    public long nextId() {
+        return allocator.nextId();
+    }
+
+    /**
+     * 直接租用一段连续的ID，不经过号段缓存，供批量导入使用
+     *
+     * @param size
+     * @return 号段中最小的ID
+     */
+    public long leaseBlock(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException();
+        }
+        return lease(size) - size + 1;
+    }
+}
@@ -0,0 +1,65 @@
+package cn.songm.acc.service.impl;
+
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import cn.songm.acc.dao.UserLoginStatDao;
+import cn.songm.acc.entity.UserLoginStat;
+import cn.songm.acc.service.LoginStatService;
+
+@Service("loginStatService")
+public class LoginStatServiceImpl implements LoginStatService {
+
+    /** 排行最多返回的条数 */
+    private static final int MAX_LIMIT = 1000;
+
+    @Autowired
+    private UserLoginStatDao userLoginStatDao;
+
+    private void checkRange(Date begin, Date end) {
+        if (begin == null || end == null || !begin.before(end)) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    private UserLoginStat empty(String account, Long userId) {
+        UserLoginStat stat = new UserLoginStat();
+        stat.setAccount(account);
+        stat.setUserId(userId);
+        stat.setSuccessCount(0L);
+        stat.setFailureCount(0L);
+        return stat;
+    }
+
+    @Override
+    public UserLoginStat getAccountStat(String account, Date begin, Date end) {
+        checkRange(begin, end);
+        UserLoginStat stat = userLoginStatDao.sumByAccount(account, begin, end);
+        return stat == null ? empty(account, null) : stat;
+    }
+
+    @Override
+    public UserLoginStat getUserStat(long userId, Date begin, Date end) {
+        checkRange(begin, end);
+        UserLoginStat stat = userLoginStatDao.sumByUser(userId, begin, end);
+        return stat == null ? empty(null, userId) : stat;
+    }
+
+    @Override
+    public List<UserLoginStat> getAccountTrend(String account, Date begin, Date end) {
+        checkRange(begin, end);
+        return userLoginStatDao.listByAccount(account, begin, end);
+    }
+
+    @Override
+    public List<UserLoginStat> getTopFailures(Date begin, Date end, int limit) {
+        checkRange(begin, end);
+        if (limit <= 0 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException();
+        }
+        return userLoginStatDao.listTopFailures(begin, end, limit);
+    }
+}
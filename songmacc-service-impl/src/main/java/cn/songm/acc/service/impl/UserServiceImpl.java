@@ -1,15 +1,39 @@
 package cn.songm.acc.service.impl;
 
-import java.util.Calendar;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import com.alibaba.dubbo.rpc.RpcContext;
+
+import cn.songm.acc.audit.LoginAuditWriter;
+import cn.songm.acc.audit.LoginRollup;
+import cn.songm.acc.cache.UserExistenceCache;
+import cn.songm.acc.cache.UserNearCache;
 import cn.songm.acc.dao.UserDao;
+import cn.songm.acc.entity.SeekPage;
 import cn.songm.acc.entity.User;
+import cn.songm.acc.entity.Verification;
+import cn.songm.acc.password.PasswordEncoder;
+import cn.songm.acc.redis.UserRedis;
+import cn.songm.acc.redis.VerificationRedis;
+import cn.songm.acc.sequence.UserIdGenerator;
 import cn.songm.acc.service.UserError;
 import cn.songm.acc.service.UserService;
+import cn.songm.acc.throttle.LoginThrottle;
+import cn.songm.acc.validate.UserValidator;
 import cn.songm.common.service.ServiceException;
 import cn.songm.common.utils.CodeUtils;
 import cn.songm.common.utils.StringUtils;
@@ -17,119 +41,341 @@ import cn.songm.common.utils.StringUtils;
 @Service("userService")
 public class UserServiceImpl implements UserService {
 
-    private static String KEY_ACC = "songm";
-    private static String KEY_NIC = "松美";
+    /** 账号唯一索引 */
+    private static final String UK_ACCOUNT = "uk_acc_user_account";
+    /** 昵称唯一索引 */
+    private static final String UK_NICKNAME = "uk_acc_user_nickname";
+    /** 分页每页最多条数 */
+    private static final int MAX_PAGE_SIZE = 500;
 
     @Autowired
     private UserDao userDao;
+    @Autowired
+    private UserRedis userRedis;
+    @Autowired
+    private UserNearCache userNearCache;
+    @Autowired
+    private UserIdGenerator userIdGenerator;
+    @Autowired
+    private LoginAuditWriter loginAuditWriter;
+    @Autowired
+    private LoginRollup loginRollup;
+    @Autowired
+    private UserValidator userValidator;
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+    @Autowired
+    private VerificationRedis verificationRedis;
+    @Autowired
+    private LoginThrottle loginThrottle;
+    @Autowired
+    private UserExistenceCache userExistenceCache;
+
+    /** 增量同步延迟（秒），只返回该时长之前的变更 */
+    @Value("${acc.sync.lag:5}")
+    private int syncLag;
+    /** 验证码有效时长（秒） */
+    @Value("${acc.vcode.ttl:300}")
+    private long vcodeTtl;
 
     @Override
-    @Transactional(rollbackFor = Exception.class)
-    public User register(String account, String password, String nickname,
-            String sysVcode, String vcode) throws ServiceException {
-        if (!vcode.equalsIgnoreCase(sysVcode)) {
+    public void putVcode(String target, String vcode) {
+        if (StringUtils.isEmptyOrNull(target) || StringUtils.isEmptyOrNull(vcode)) {
+            throw new IllegalArgumentException();
+        }
+        Verification ver = new Verification();
+        ver.setTarget(target);
+        ver.setVcode(digestVcode(vcode));
+        ver.setExpire(vcodeTtl);
+        ver.setStatus(0);
+        verificationRedis.save(ver);
+    }
+
+    /**
+     * 校验并作废验证码
+     * 
+     * @param target
+     * @param vcode
+     * @throws ServiceException
+     */
+    private void checkVcode(String target, String vcode) throws ServiceException {
+        if (StringUtils.isEmptyOrNull(target) || StringUtils.isEmptyOrNull(vcode)
+                || !verificationRedis.consume(target, digestVcode(vcode))) {
             throw new ServiceException(UserError.ACC_116.getErrCode(), "验证码错误");
         }
+    }
+
+    /** 验证码不区分大小写，只保存摘要 */
+    private static String digestVcode(String vcode) {
+        return CodeUtils.md5(vcode.toLowerCase(Locale.ROOT));
+    }
+
+    @Override
+    public User register(String account, String password, String nickname,
+            String target, String vcode) throws ServiceException {
+        checkVcode(target, vcode);
         if (StringUtils.isEmptyOrNull(password)
                 || StringUtils.isEmptyOrNull(nickname)) {
             throw new IllegalArgumentException();
         }
 
         if (!StringUtils.isEmptyOrNull(account)) {
-            // 验证账号格式
-            if (StringUtils.isEmptyOrNull(account) || !account.matches("^\\w{5,50}$")) {
-                throw new ServiceException(UserError.ACC_105.getErrCode(), "账号格式错误");
-            }
-            account = account.toLowerCase();
-            // 验证账号中的关键字
-            verifyAccKey(account);
-            // 验证账号是否重复
-            if (this.verifyAccountRep(account)) {
-                throw new ServiceException(UserError.ACC_101.getErrCode(), "账号已经被使用");
-            }
+            // 验证账号格式和关键字
+            account = userValidator.checkAccount(account);
+        } else {
+            // 未设置账号，唯一索引允许多个NULL
+            account = null;
         }
 
         // 验证昵称格式
-        if (StringUtils.isEmptyOrNull(nickname) || !nickname.matches("^.{1,12}$")) {
-            throw new ServiceException(UserError.ACC_106.getErrCode(), "昵称格式错误");
-        }
+        userValidator.checkNickname(nickname);
         // 验证密码格式
-        if (StringUtils.isEmptyOrNull(password) || !password.matches("^.{6,20}$")) {
-            throw new ServiceException(UserError.ACC_107.getErrCode(), "密码格式错误");
-        }
+        userValidator.checkPassword(password);
         // 验证昵称中的关键字
-        verifyNicKey(nickname);
-        // 验证昵称是否重复
-        if (this.verifyNickRep(nickname)) {
-            throw new ServiceException(UserError.ACC_102.getErrCode(), "昵称已经被使用");
-        }
+        userValidator.checkNicknameKeyword(nickname);
 
+        // 加密处理，在取号和写库之前，排队期间不占用连接
+        String hashed = passwordEncoder.hash(password);
+
+        // 账号、昵称是否重复由唯一索引保证
         User user = new User();
         user.setAccount(account);
-        // 加密处理
-        password = CodeUtils.md5(password);
-        user.setPassword(password);
+        user.setPassword(hashed);
         user.setNickname(nickname);
-        return this.addUser(user);
-    }
-
-    private void verifyAccKey(String word) throws ServiceException {
-        if (word.indexOf(KEY_ACC) > -1)
-            throw new ServiceException(UserError.ACC_113.getErrCode(), "账号中不能包含关键字");
+        this.addUser(user);
+        markTaken(account, nickname);
+        return user;
     }
 
-    private void verifyNicKey(String word) throws ServiceException {
-        if (word.indexOf(KEY_NIC) > -1)
-            throw new ServiceException(UserError.ACC_114.getErrCode(), "昵称中不能包含关键字");
+    private User addUser(User user) throws ServiceException {
+        user.setUserId(userIdGenerator.nextId());
+        try {
+            userDao.insert(user);
+        } catch (DuplicateKeyException e) {
+            throw duplicateError(e);
+        }
+        return user;
     }
 
-    private User addUser(User user) {
-        user.setUserId(userDao.selectSequence());
-        userDao.insert(user);
-        return user;
+    /**
+     * 将唯一索引冲突转换为账号/昵称重复错误
+     * 
+     * @param e
+     * @return
+     */
+    private ServiceException duplicateError(DuplicateKeyException e) {
+        String msg = String.valueOf(e.getMostSpecificCause().getMessage()).toLowerCase();
+        if (msg.contains(UK_ACCOUNT)) {
+            return new ServiceException(UserError.ACC_101.getErrCode(), "账号已经被使用", e);
+        }
+        if (msg.contains(UK_NICKNAME)) {
+            return new ServiceException(UserError.ACC_102.getErrCode(), "昵称已经被使用", e);
+        }
+        throw e;
     }
 
     @Override
-    public User checkLogin(String account, String password, String sysVcode, String vcode)
+    public User checkLogin(String account, String password, String target, String vcode)
             throws ServiceException {
-        if (!vcode.equalsIgnoreCase(sysVcode)) {
-            throw new ServiceException(UserError.ACC_116.getErrCode(), "验证码错误");
+        // 频率限制只在内存中计数，先于验证码、数据库和密码散列
+        // 方法不在事务中（check*），被拒绝的请求不会从连接池取连接
+        loginThrottle.acquire(account,
+                RpcContext.getContext().getAttachment(ATTACHMENT_CLIENT_IP));
+        checkVcode(target, vcode);
+
+        // 最近确认不存在的账号不再查询数据库
+        if (userExistenceCache.isAccountMissing(account, false)) {
+            recordLogin(account, null, false);
+            throw new ServiceException(UserError.ACC_109.getErrCode(), "用户账号或者密码错误");
         }
-        
-        password = CodeUtils.md5(password);
-        String pwd = userDao.queryPwdByAccount(account);
-        if (StringUtils.isEmptyOrNull(pwd) || !password.equals(pwd)) {
+        User user = userDao.queryCredentialByAccount(account);
+        if (user == null) {
+            userExistenceCache.putMissingAccount(account);
+        }
+        if (user == null || StringUtils.isEmptyOrNull(user.getPassword())
+                || !passwordEncoder.matches(password, user.getPassword())) {
+            recordLogin(account, user == null ? null : user.getUserId(), false);
             throw new ServiceException(UserError.ACC_109.getErrCode(), "用户账号或者密码错误");
         }
-        return userDao.queryByAccount(account);
+        // 旧的散列在后台升级，不影响本次登入
+        if (passwordEncoder.needsRehash(user.getPassword())) {
+            final long userId = user.getUserId();
+            final String oldPassword = user.getPassword();
+            passwordEncoder.rehash(password,
+                    newPassword -> userDao.rehashPassword(userId, oldPassword, newPassword));
+        }
+        user.setPassword(null);
+        recordLogin(account, user.getUserId(), true);
+        return user;
+    }
+
+    /**
+     * 登入日志异步写入，同时计入汇总
+     */
+    private void recordLogin(String account, Long userId, boolean success) {
+        loginAuditWriter.record(account, userId, success);
+        loginRollup.record(account, userId, success);
     }
 
     @Override
     public boolean verifyAccountRep(String account) {
+        if (userExistenceCache.isAccountMissing(account, true)) {
+            return false;
+        }
         int n = userDao.countByAccount(account);
         if (n != 0) {
             return true;
         }
+        userExistenceCache.putMissingAccount(account);
         return false;
     }
 
     @Override
     public boolean verifyNickRep(String nickname) {
+        if (userExistenceCache.isNicknameMissing(nickname)) {
+            return false;
+        }
         int n = userDao.countByNick(nickname);
         if (n != 0) {
             return true;
         }
+        userExistenceCache.putMissingNickname(nickname);
         return false;
     }
 
     @Override
     public User getUserById(Long userId) {
-        return userDao.selectOneById(userId);
+        User user = userNearCache.getUser(userId);
+        if (user != null) {
+            return user;
+        }
+        user = userRedis.read(userId);
+        if (user == null) {
+            user = userDao.selectOneById(userId);
+            if (user == null) {
+                return null;
+            }
+            userRedis.save(user);
+        }
+        userNearCache.putUser(user);
+        return user;
+    }
+
+    @Override
+    public Map<Long, User> getUsersByIds(Collection<Long> userIds) {
+        Map<Long, User> result = new HashMap<Long, User>();
+        if (userIds == null || userIds.isEmpty()) {
+            return result;
+        }
+        // 本地缓存
+        List<Long> misses = new ArrayList<Long>();
+        for (Long userId : new LinkedHashSet<Long>(userIds)) {
+            if (userId == null) continue;
+            User user = userNearCache.getUser(userId);
+            if (user != null) {
+                result.put(userId, user);
+            } else {
+                misses.add(userId);
+            }
+        }
+        if (misses.isEmpty()) {
+            return result;
+        }
+        // Redis批量读取
+        Map<Long, User> cached = userRedis.readAll(misses);
+        for (User user : cached.values()) {
+            userNearCache.putUser(user);
+        }
+        result.putAll(cached);
+        misses.removeAll(cached.keySet());
+        if (misses.isEmpty()) {
+            return result;
+        }
+        // 数据库一次查询
+        List<User> users = userDao.queryByIds(misses);
+        userRedis.saveAll(users);
+        for (User user : users) {
+            userNearCache.putUser(user);
+            result.put(user.getUserId(), user);
+        }
+        return result;
+    }
+
+    @Override
+    public SeekPage<User> getUserPage(String cursor, int pageSize) {
+        if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException();
+        }
+        return userDao.listPageSeek(cursor, pageSize, null);
+    }
+
+    @Override
+    public List<User> getChangedUsers(Date updated, Long userId, int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException();
+        }
+        Date until = new Date(System.currentTimeMillis() - syncLag * 1000L);
+        return userDao.queryChangedSince(updated, userId, until, limit);
+    }
+
+    /**
+     * 清除用户缓存
+     * 
+     * 立即删除一次，事务提交后再删除一次，避免提交前被并发读回填旧数据。
+     * 其它节点的本地缓存在提交后通过消息通知删除。
+     * 
+     * @param userId
+     */
+    private void evictUser(final long userId) {
+        userNearCache.remove(userId);
+        userRedis.delete(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(
+                    new TransactionSynchronizationAdapter() {
+                        @Override
+                        public void afterCommit() {
+                            userRedis.delete(userId);
+                            userNearCache.invalidate(userId);
+                        }
+                    });
+        } else {
+            userNearCache.invalidate(userId);
+        }
+    }
+
+    /**
+     * 新的账号、昵称已被使用，提交后删除各节点的不存在缓存并加入布隆过滤器
+     * 
+     * 提交前删除的话，并发的查询可能在提交前又缓存为不存在。
+     * 
+     * @param account 可为null
+     * @param nickname 可为null
+     */
+    private void markTaken(final String account, final String nickname) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(
+                    new TransactionSynchronizationAdapter() {
+                        @Override
+                        public void afterCommit() {
+                            userExistenceCache.taken(account, nickname);
+                        }
+                    });
+        } else {
+            userExistenceCache.taken(account, nickname);
+        }
     }
 
     @Override
     public User getUserPrivacyById(long userId) {
-        return userDao.queryPrivacyById(userId);
+        User user = userNearCache.getPrivacy(userId);
+        if (user != null) {
+            return user;
+        }
+        user = userDao.queryPrivacyById(userId);
+        if (user != null) {
+            userNearCache.putPrivacy(user);
+        }
+        return user;
     }
 
     public User getUserPrivacyByAccount(String account) {
@@ -140,24 +386,26 @@ public class UserServiceImpl implements UserService {
     public void editUserPassword(long userId, String oldPsw, String newPsw)
             throws ServiceException {
         // 验证密码格式
-        if (StringUtils.isEmptyOrNull(newPsw) || !newPsw.matches("^.{6,20}$")) {
-            throw new ServiceException(UserError.ACC_107.getErrCode(), "密码格式错误");
-        }
+        userValidator.checkPassword(newPsw);
 
-        // 密码MD5加密
-        oldPsw = CodeUtils.md5(oldPsw);
-        User user = this.getUserById(userId);
-        if (!user.getPassword().equals(oldPsw)) {
+        // 缓存中的用户信息不含密码，从数据库读取
+        User user = userDao.queryCredentialById(userId);
+        if (user == null) {
+            throw new IllegalArgumentException();
+        }
+        // 不在事务中，读取后连接已归还，校验和散列不占用连接
+        if (!passwordEncoder.matches(oldPsw, user.getPassword())) {
             throw new ServiceException(UserError.ACC_103.getErrCode(), "用户原始密码错误");
         }
 
-        newPsw = CodeUtils.md5(newPsw);
-        userDao.updatePassword(userId, newPsw);
+        userDao.updatePassword(userId, passwordEncoder.hash(newPsw));
+        evictUser(userId);
     }
 
     @Override
     public void editUserPhoto(long userId, String avatarServer, String avatarPath) {
         userDao.updatePhoto(userId, avatarServer, avatarPath);
+        evictUser(userId);
 		//songmUserService.editUserInfo(String.valueOf(userId),
 		//		JsonUtils.getInstance().toJson(getUserById(userId)));
     }
@@ -167,68 +415,63 @@ public class UserServiceImpl implements UserService {
             Integer gender, Integer birthYear, Integer birthMonth,
             Integer birthDay, String summary) throws ServiceException {
         // 数据不能为空
-        if (userId <= 0 || nickname.trim().equals("")) {
+        if (userId <= 0 || nickname == null || nickname.trim().equals("")) {
             throw new IllegalArgumentException();
         }
         // 验证昵称格式
-        if (StringUtils.isEmptyOrNull(nickname) || !nickname.matches("^.{1,12}$")) {
-            throw new ServiceException(UserError.ACC_106.getErrCode(), "昵称格式错误");
-        }
+        userValidator.checkNickname(nickname);
         // 验证生日格式
         if (birthYear != null && birthMonth != null && birthDay != null) {
-        	Calendar calendar = Calendar.getInstance();
-            try {
-                calendar.set(birthYear, birthMonth - 1, birthDay);
-            } catch (Exception e) {
-                throw new ServiceException(UserError.ACC_104.getErrCode(), "生日格式错误", e);
-            }
+            userValidator.checkBirthday(birthYear, birthMonth, birthDay);
         }
         // 验证昵称
         User user = this.getUserById(userId);
-        if (!user.getNickname().equals(nickname)) {
+        boolean changed = !user.getNickname().equals(nickname);
+        if (changed) {
             // 验证昵称中的关键字
-            verifyNicKey(nickname);
-            if (this.verifyNickRep(nickname)) {
-                throw new ServiceException(UserError.ACC_102.getErrCode(), "昵称已经被使用");
-            }
+            userValidator.checkNicknameKeyword(nickname);
         }
 
-        userDao.update(userId, nickname, userName, gender, birthYear,
-                birthMonth, birthDay, summary);
-        user.setNickname(nickname);
-		user.setRealName(userName);
-		user.setGender(gender);
-		user.setBirthYear(birthYear);
-		user.setBirthMonth(birthMonth);
-		user.setBirthDay(birthDay);
-		user.setSummary(summary);
+        try {
+            userDao.update(userId, nickname, userName, gender, birthYear,
+                    birthMonth, birthDay, summary);
+        } catch (DuplicateKeyException e) {
+            throw duplicateError(e);
+        }
+        evictUser(userId);
+        if (changed) {
+            markTaken(null, nickname);
+        }
 		//songmUserService.editUserInfo(String.valueOf(userId), JsonUtils.getInstance().toJson(user));
     }
 
     @Override
     public void editNickname(long userId, String nickname) throws ServiceException {
         // 数据不能为空
-        if (userId <= 0 || nickname.trim().equals("")) {
+        if (userId <= 0 || nickname == null || nickname.trim().equals("")) {
             throw new IllegalArgumentException();
         }
         
         // 验证昵称格式
-        if (StringUtils.isEmptyOrNull(nickname) || !nickname.matches("^.{1,12}$")) {
-            throw new ServiceException(UserError.ACC_106.getErrCode(), "昵称格式错误");
-        }
+        userValidator.checkNickname(nickname);
         
         // 验证昵称
         User user = this.getUserById(userId);
-        if (!user.getNickname().equals(nickname)) {
+        boolean changed = !user.getNickname().equals(nickname);
+        if (changed) {
             // 验证昵称中的关键字
-            verifyNicKey(nickname);
-            if (this.verifyNickRep(nickname)) {
-                throw new ServiceException(UserError.ACC_102.getErrCode(), "昵称已经被使用");
-            }
+            userValidator.checkNicknameKeyword(nickname);
         }
 
-        userDao.update(userId, nickname, null, null, null, null, null, null);
-        user.setNickname(nickname);
+        try {
+            userDao.update(userId, nickname, null, null, null, null, null, null);
+        } catch (DuplicateKeyException e) {
+            throw duplicateError(e);
+        }
+        evictUser(userId);
+        if (changed) {
+            markTaken(null, nickname);
+        }
         //songmUserService.editUserInfo(String.valueOf(userId), JsonUtils.getInstance().toJson(user));
     }
 
@@ -239,6 +482,7 @@ public class UserServiceImpl implements UserService {
         }
 
         userDao.update(userId, null, realName, null, null, null, null, null);
+        evictUser(userId);
         //User user = this.getUserById(userId);
         //songmUserService.editUserInfo(String.valueOf(userId), JsonUtils.getInstance().toJson(user));
     }
@@ -250,6 +494,7 @@ public class UserServiceImpl implements UserService {
         }
         
         userDao.update(userId, null, null, gender, null, null, null, null);
+        evictUser(userId);
         //User user = this.getUserById(userId);
         //songmUserService.editUserInfo(String.valueOf(userId), JsonUtils.getInstance().toJson(user));
     }
@@ -263,14 +508,10 @@ public class UserServiceImpl implements UserService {
         }
         
         // 验证生日格式
-        Calendar calendar = Calendar.getInstance();
-        try {
-            calendar.set(birthYear, birthMonth - 1, birthDay);
-        } catch (Exception e) {
-            throw new ServiceException(UserError.ACC_104.getErrCode(), "生日格式错误", e);
-        }
+        userValidator.checkBirthday(birthYear, birthMonth, birthDay);
 
         userDao.update(userId, null, null, null, birthYear, birthMonth, birthDay, null);
+        evictUser(userId);
         //User user = this.getUserById(userId);
         //songmUserService.editUserInfo(String.valueOf(userId), JsonUtils.getInstance().toJson(user));
     }
@@ -282,6 +523,7 @@ public class UserServiceImpl implements UserService {
         }
 
         userDao.update(userId, null, null, null, null, null, null, summary);
+        evictUser(userId);
         //User user = this.getUserById(userId);
         //songmUserService.editUserInfo(String.valueOf(userId), JsonUtils.getInstance().toJson(user));
     }
@@ -289,16 +531,24 @@ public class UserServiceImpl implements UserService {
 	@Override
 	public void editUserAccount(long userId, String account, String password) throws ServiceException {
 		User user = this.getUserById(userId);
-		if (StringUtils.isEmptyOrNull(user.getAccount())) {
+		// 只有未设置账号的用户可以设置
+		if (!StringUtils.isEmptyOrNull(user.getAccount())) {
 			throw new ServiceException(UserError.ACC_AEXIST.getErrCode(), "用户账号已经存在");
 		}
 		
+		// 验证账号格式和关键字
+		account = userValidator.checkAccount(account);
 		// 验证密码格式
-        if (StringUtils.isEmptyOrNull(password) || !password.matches("^.{6,20}$")) {
-            throw new ServiceException(UserError.ACC_107.getErrCode(), "密码格式错误");
-        }
+        userValidator.checkPassword(password);
 
-        userDao.updateAccount(userId, account, CodeUtils.md5(password));
+        String hashed = passwordEncoder.hash(password);
+        try {
+            userDao.updateAccount(userId, account, hashed);
+        } catch (DuplicateKeyException e) {
+            throw duplicateError(e);
+        }
+        evictUser(userId);
+        markTaken(account, null);
         //songmUserService.editUserInfo(String.valueOf(userId), JsonUtils.getInstance().toJson(user));
 	}
 
@@ -0,0 +1,182 @@
+package cn.songm.acc.throttle;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import cn.songm.acc.service.UserError;
+import cn.songm.common.service.ServiceException;
+
+/**
+ * 登入频率限制
+ *
+ * 同一账号、同一客户端IP在滑动窗口内的登入尝试次数超过上限时直接拒绝，
+ * 在查询数据库和计算密码散列之前执行。默认在进程内计数，每个节点单独限制；
+ * 多节点需要共享计数时设置acc.throttle.mode=redis，Redis不可用时放行。
+ *
+ * @author zhangsong
+ *
+ */
+@Component("loginThrottle")
+@ManagedResource(objectName = "cn.songm.acc:type=Throttle,name=loginThrottle")
+public class LoginThrottle {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LoginThrottle.class);
+
+    private static final String KEY_PREFIX = "acc:throttle:";
+
+    /** 上一窗口计数按权重折算，未超限时当前窗口计数加1 */
+    private static final RedisScript<Long> ACQUIRE = new DefaultRedisScript<Long>(
+            "local cur = tonumber(redis.call('GET', KEYS[1]) or '0') "
+            + "local prev = tonumber(redis.call('GET', KEYS[2]) or '0') "
+            + "if prev * tonumber(ARGV[2]) + cur >= tonumber(ARGV[1]) then return 0 end "
+            + "redis.call('INCR', KEYS[1]) "
+            + "redis.call('EXPIRE', KEYS[1], ARGV[3]) "
+            + "return 1", Long.class);
+
+    /** 计数方式：local进程内，redis多节点共享 */
+    @Value("${acc.throttle.mode:local}")
+    private String mode;
+    /** 窗口长度（秒） */
+    @Value("${acc.throttle.window:60}")
+    private int window;
+    /** 每个账号窗口内最多尝试次数，0为不限制 */
+    @Value("${acc.throttle.account.limit:10}")
+    private int accountLimit;
+    /** 每个IP窗口内最多尝试次数，0为不限制 */
+    @Value("${acc.throttle.ip.limit:100}")
+    private int ipLimit;
+
+    @Resource(name = "verifyRedisTemplate")
+    private StringRedisTemplate verifyRedisTemplate;
+
+    private boolean redis;
+    private SlidingWindow accounts;
+    private SlidingWindow ips;
+    private ScheduledExecutorService sweeper;
+
+    private final LongAdder accountRejected = new LongAdder();
+    private final LongAdder ipRejected = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        redis = "redis".equalsIgnoreCase(mode);
+        long windowNanos = TimeUnit.SECONDS.toNanos(window);
+        accounts = new SlidingWindow(windowNanos);
+        ips = new SlidingWindow(windowNanos);
+        if (!redis) {
+            sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "login-throttle-sweep");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            sweeper.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    long now = System.nanoTime();
+                    accounts.sweep(now);
+                    ips.sweep(now);
+                }
+            }, window, window, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    /**
+     * 记录一次登入尝试，超过频率限制时拒绝
+     *
+     * @param account
+     * @param ip 客户端IP，未知时为null
+     * @throws ServiceException
+     */
+    public void acquire(String account, String ip) throws ServiceException {
+        if (accountLimit > 0 && account != null
+                && !tryAcquire(accounts, "a:", account.toLowerCase(Locale.ROOT), accountLimit)) {
+            accountRejected.increment();
+            throw new ServiceException(UserError.ACC_119.getErrCode(), "登入尝试过于频繁，请稍后重试");
+        }
+        if (ipLimit > 0 && ip != null && !tryAcquire(ips, "i:", ip, ipLimit)) {
+            ipRejected.increment();
+            throw new ServiceException(UserError.ACC_119.getErrCode(), "登入尝试过于频繁，请稍后重试");
+        }
+    }
+
+    private boolean tryAcquire(SlidingWindow local, String type, String key, int limit) {
+        if (!redis) {
+            return local.tryAcquire(key, limit, System.nanoTime());
+        }
+        long now = System.currentTimeMillis();
+        long size = TimeUnit.SECONDS.toMillis(window);
+        long bucket = now / size;
+        double weight = 1D - (double) (now % size) / size;
+        String prefix = KEY_PREFIX + type + key + ":";
+        try {
+            Long r = verifyRedisTemplate.execute(ACQUIRE,
+                    Arrays.asList(prefix + bucket, prefix + (bucket - 1)),
+                    String.valueOf(limit), String.valueOf(weight), String.valueOf(2 * window));
+            return r == null || r == 1L;
+        } catch (RuntimeException e) {
+            errors.increment();
+            LOG.warn("Throttle {} failed: {}", key, e.getMessage());
+            return true;
+        }
+    }
+
+    @ManagedAttribute(description = "计数方式")
+    public String getMode() {
+        return redis ? "redis" : "local";
+    }
+
+    @ManagedAttribute(description = "账号超限被拒绝的次数")
+    public long getAccountRejectedCount() {
+        return accountRejected.sum();
+    }
+
+    @ManagedAttribute(description = "IP超限被拒绝的次数")
+    public long getIpRejectedCount() {
+        return ipRejected.sum();
+    }
+
+    @ManagedAttribute(description = "进程内跟踪的账号数")
+    public int getTrackedAccounts() {
+        return accounts.size();
+    }
+
+    @ManagedAttribute(description = "进程内跟踪的IP数")
+    public int getTrackedIps() {
+        return ips.size();
+    }
+
+    @ManagedAttribute(description = "Redis访问异常次数")
+    public long getErrorCount() {
+        return errors.sum();
+    }
+}
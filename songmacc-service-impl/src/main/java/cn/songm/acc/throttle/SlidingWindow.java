@@ -0,0 +1,112 @@
+package cn.songm.acc.throttle;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 滑动窗口计数（进程内）
+ *
+ * 每个键保留当前和上一个固定窗口的计数，按上一个窗口剩余的时间比例折算：
+ * 估计值 = 上一窗口计数 × (1 - 当前窗口已过比例) + 当前窗口计数。
+ * 误差很小且每个键只占两个计数。不同键互不影响，同一个键的更新在该键上同步，
+ * 相当于按键分段加锁。
+ *
+ * @author zhangsong
+ *
+ */
+public final class SlidingWindow {
+
+    private final long windowNanos;
+    private final ConcurrentMap<String, Slot> slots = new ConcurrentHashMap<String, Slot>();
+
+    /**
+     * @param windowNanos 窗口长度（纳秒）
+     */
+    public SlidingWindow(long windowNanos) {
+        if (windowNanos <= 0) {
+            throw new IllegalArgumentException("windowNanos: " + windowNanos);
+        }
+        this.windowNanos = windowNanos;
+    }
+
+    /**
+     * 估计值未达到上限时计数加1
+     *
+     * @param key
+     * @param limit 窗口内最多次数
+     * @param now System.nanoTime()
+     * @return 未超限返回true
+     */
+    public boolean tryAcquire(String key, int limit, long now) {
+        Slot slot = slots.get(key);
+        if (slot == null) {
+            Slot n = new Slot(now);
+            slot = slots.putIfAbsent(key, n);
+            if (slot == null) {
+                slot = n;
+            }
+        }
+        synchronized (slot) {
+            slot.roll(now, windowNanos);
+            long elapsed = now - slot.start;
+            double estimate = slot.previous * (double) (windowNanos - elapsed) / windowNanos + slot.current;
+            if (estimate >= limit) {
+                return false;
+            }
+            slot.current++;
+            return true;
+        }
+    }
+
+    /**
+     * 删除两个窗口内没有计数的键
+     *
+     * @param now System.nanoTime()
+     * @return 删除的键个数
+     */
+    public int sweep(long now) {
+        int removed = 0;
+        for (Iterator<Slot> it = slots.values().iterator(); it.hasNext();) {
+            Slot slot = it.next();
+            synchronized (slot) {
+                if (now - slot.start >= 2 * windowNanos) {
+                    it.remove();
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    /** 跟踪的键个数 */
+    public int size() {
+        return slots.size();
+    }
+
+    private static final class Slot {
+        /** 当前窗口开始时间 */
+        long start;
+        int current;
+        int previous;
+
+        Slot(long start) {
+            this.start = start;
+        }
+
+        void roll(long now, long window) {
+            long elapsed = now - start;
+            if (elapsed < window) {
+                return;
+            }
+            if (elapsed < 2 * window) {
+                previous = current;
+                start += window;
+            } else {
+                previous = 0;
+                start = now;
+            }
+            current = 0;
+        }
+    }
+}
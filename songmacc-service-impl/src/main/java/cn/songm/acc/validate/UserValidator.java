@@ -0,0 +1,155 @@
+package cn.songm.acc.validate;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Locale;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import cn.songm.acc.keyword.KeywordFilter;
+import cn.songm.acc.service.UserError;
+import cn.songm.common.service.ServiceException;
+
+/**
+ * 用户输入校验
+ *
+ * 格式规则与原来的正则表达式一致，用手写的扫描代替String.matches，
+ * 不编译Pattern、不创建对象：
+ * <ul>
+ * <li>账号：^\w{5,50}$，即5~50个ASCII字母、数字或下划线</li>
+ * <li>昵称：^.{1,12}$，即1~12个字符（按码点计），不含换行符</li>
+ * <li>密码：^.{6,20}$，即6~20个字符（按码点计），不含换行符</li>
+ * </ul>
+ * 生日用java.time严格校验，不存在的日期和将来的日期都会被拒绝。
+ *
+ * @author zhangsong
+ *
+ */
+@Component("userValidator")
+public class UserValidator {
+
+    @Autowired
+    private KeywordFilter keywordFilter;
+
+    /**
+     * 校验账号格式和关键字
+     *
+     * @param account
+     * @return 转为小写的账号
+     * @throws ServiceException
+     */
+    public String checkAccount(String account) throws ServiceException {
+        if (!isAccount(account)) {
+            throw new ServiceException(UserError.ACC_105.getErrCode(), "账号格式错误");
+        }
+        account = account.toLowerCase(Locale.ROOT);
+        if (keywordFilter.findInAccount(account) != null) {
+            throw new ServiceException(UserError.ACC_113.getErrCode(), "账号中不能包含关键字");
+        }
+        return account;
+    }
+
+    /**
+     * 校验昵称格式
+     *
+     * @param nickname
+     * @throws ServiceException
+     */
+    public void checkNickname(String nickname) throws ServiceException {
+        if (!isNickname(nickname)) {
+            throw new ServiceException(UserError.ACC_106.getErrCode(), "昵称格式错误");
+        }
+    }
+
+    /**
+     * 校验昵称关键字，只在设置新昵称时检查
+     *
+     * @param nickname
+     * @throws ServiceException
+     */
+    public void checkNicknameKeyword(String nickname) throws ServiceException {
+        if (keywordFilter.findInNickname(nickname) != null) {
+            throw new ServiceException(UserError.ACC_114.getErrCode(), "昵称中不能包含关键字");
+        }
+    }
+
+    /**
+     * 校验密码格式
+     *
+     * @param password
+     * @throws ServiceException
+     */
+    public void checkPassword(String password) throws ServiceException {
+        if (!isPassword(password)) {
+            throw new ServiceException(UserError.ACC_107.getErrCode(), "密码格式错误");
+        }
+    }
+
+    /**
+     * 校验生日
+     *
+     * @param year
+     * @param month
+     * @param day
+     * @throws ServiceException
+     */
+    public void checkBirthday(int year, int month, int day) throws ServiceException {
+        if (!isBirthday(year, month, day)) {
+            throw new ServiceException(UserError.ACC_104.getErrCode(), "生日格式错误");
+        }
+    }
+
+    public static boolean isAccount(CharSequence s) {
+        if (s == null || s.length() < 5 || s.length() > 50) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static boolean isNickname(CharSequence s) {
+        return isLine(s, 1, 12);
+    }
+
+    public static boolean isPassword(CharSequence s) {
+        return isLine(s, 6, 20);
+    }
+
+    public static boolean isBirthday(int year, int month, int day) {
+        try {
+            return !LocalDate.of(year, month, day).isAfter(LocalDate.now());
+        } catch (DateTimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 与^.{min,max}$相同：码点个数在[min, max]之间，不含行结束符
+     */
+    private static boolean isLine(CharSequence s, int min, int max) {
+        if (s == null || s.length() < min || s.length() > 2 * max) {
+            return false;
+        }
+        int count = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return false;
+            }
+            if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                i++;
+            }
+            if (++count > max) {
+                return false;
+            }
+        }
+        return count >= min;
+    }
+}
@@ -0,0 +1,64 @@
+package cn.songm.acc.aspect;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import cn.songm.common.service.ServiceException;
+
+public class ServiceMetricsInterceptorTest {
+
+    public interface Greeter {
+        String greet(String name, String password) throws ServiceException;
+    }
+
+    public static class GreeterImpl implements Greeter {
+        @Override
+        public String greet(String name, String password) throws ServiceException {
+            if (name == null) {
+                throw new ServiceException("ACC_100", "name");
+            }
+            return "hello " + name;
+        }
+    }
+
+    private ServiceMetricsInterceptor metrics;
+    private Greeter greeter;
+
+    @Before
+    public void setUp() {
+        metrics = new ServiceMetricsInterceptor();
+        ReflectionTestUtils.setField(metrics, "sample", 1);
+        ReflectionTestUtils.setField(metrics, "mask", "password");
+        ReflectionTestUtils.setField(metrics, "interval", 3600L);
+        metrics.init();
+        ProxyFactory factory = new ProxyFactory(new GreeterImpl());
+        factory.addInterface(Greeter.class);
+        factory.addAdvice(metrics);
+        greeter = (Greeter) factory.getProxy();
+    }
+
+    @After
+    public void tearDown() {
+        metrics.destroy();
+    }
+
+    @Test
+    public void testRecord() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals("hello a", greeter.greet("a", "secret"));
+        }
+        try {
+            greeter.greet(null, "secret");
+            Assert.fail();
+        } catch (ServiceException e) {
+            Assert.assertEquals("ACC_100", e.getErrCode());
+        }
+        Assert.assertEquals(11, metrics.getCallCount());
+        Assert.assertEquals(1, metrics.getErrorCount());
+        Assert.assertTrue(metrics.reportTotal().contains("GreeterImpl.greet"));
+    }
+}
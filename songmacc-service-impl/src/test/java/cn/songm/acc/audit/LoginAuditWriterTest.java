@@ -0,0 +1,156 @@
+package cn.songm.acc.audit;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import cn.songm.acc.dao.UserLoginDao;
+import cn.songm.acc.entity.UserLogin;
+
+/**
+ * 登入日志异步写入测试（H2内存数据库）
+ *
+ * @author zhangsong
+ *
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:app-acc-h2.xml" })
+public class LoginAuditWriterTest {
+
+    @Autowired
+    private UserLoginDao userLoginDao;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void setUp() {
+        jdbcTemplate.update("delete from acc_user_login");
+    }
+
+    private LoginAuditWriter writer(int capacity, int batchSize, long interval) {
+        LoginAuditWriter writer = new LoginAuditWriter();
+        ReflectionTestUtils.setField(writer, "userLoginDao", userLoginDao);
+        ReflectionTestUtils.setField(writer, "capacity", capacity);
+        ReflectionTestUtils.setField(writer, "batchSize", batchSize);
+        ReflectionTestUtils.setField(writer, "interval", interval);
+        writer.init();
+        return writer;
+    }
+
+    private int rows() {
+        return jdbcTemplate.queryForObject("select count(1) from acc_user_login", Integer.class);
+    }
+
+    @Test
+    public void testBatchWrite() throws Exception {
+        LoginAuditWriter writer = writer(10000, 100, 50);
+        for (int i = 0; i < 1000; i++) {
+            writer.record("account" + i, (long) i, i % 10 != 0);
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (writer.getWrittenCount() < 1000 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        writer.destroy();
+
+        Assert.assertEquals(1000, writer.getWrittenCount());
+        Assert.assertEquals(0, writer.getDroppedCount());
+        Assert.assertEquals(1000, rows());
+        Assert.assertEquals(Integer.valueOf(100), jdbcTemplate.queryForObject(
+                "select count(1) from acc_user_login where lflag = false", Integer.class));
+        Assert.assertTrue(writer.getAvgBatchSize() > 1);
+    }
+
+    @Test
+    public void testOverflowDropsNewEvents() {
+        // 不启动写入线程，队列只进不出
+        LoginAuditWriter writer = new LoginAuditWriter();
+        ReflectionTestUtils.setField(writer, "queue", new ArrayBlockingQueue<UserLogin>(10));
+        ReflectionTestUtils.setField(writer, "running", true);
+        for (int i = 0; i < 100; i++) {
+            writer.record("account" + i, (long) i, true);
+        }
+
+        Assert.assertEquals(10, writer.getAcceptedCount());
+        Assert.assertEquals(90, writer.getDroppedCount());
+        Assert.assertEquals(10, writer.getQueued());
+    }
+
+    @Test
+    public void testFlushOnShutdown() {
+        // 间隔足够长，只有关闭时才会写入
+        LoginAuditWriter writer = writer(10000, 1000, 60000);
+        for (int i = 0; i < 500; i++) {
+            writer.record("account" + i, (long) i, true);
+        }
+        writer.destroy();
+        writer.record("late", 1L, true);
+
+        Assert.assertEquals(500, writer.getWrittenCount());
+        Assert.assertEquals(1, writer.getDroppedCount());
+        Assert.assertEquals(500, rows());
+    }
+
+    @Test
+    public void testTruncateLongAccount() {
+        LoginAuditWriter writer = writer(10000, 1000, 60000);
+        StringBuilder account = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            account.append('a');
+        }
+        writer.record(account.toString(), null, false);
+        writer.record("account1", 1L, true);
+        writer.destroy();
+
+        Assert.assertEquals(2, writer.getWrittenCount());
+        Assert.assertEquals(0, writer.getFailedCount());
+        Assert.assertEquals(Integer.valueOf(1), jdbcTemplate.queryForObject(
+                "select count(1) from acc_user_login where account = ?", Integer.class, account.substring(0, 50)));
+    }
+
+    @Test
+    public void testBadRecordOnlyDropsItself() {
+        LoginAuditWriter writer = writer(10000, 1000, 60000);
+        // 包含poison账号的写入总是失败
+        ReflectionTestUtils.setField(writer, "userLoginDao", (UserLoginDao) Proxy.newProxyInstance(
+                UserLoginDao.class.getClassLoader(), new Class<?>[] { UserLoginDao.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("insertBatch")) {
+                            for (Object login : (List<?>) args[0]) {
+                                if ("poison".equals(((UserLogin) login).getAccount())) {
+                                    throw new IllegalStateException("Incorrect string value");
+                                }
+                            }
+                        }
+                        try {
+                            return method.invoke(userLoginDao, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    }
+                }));
+        for (int i = 0; i < 100; i++) {
+            writer.record(i == 50 ? "poison" : "account" + i, (long) i, true);
+        }
+        writer.destroy();
+
+        Assert.assertEquals(99, writer.getWrittenCount());
+        Assert.assertEquals(1, writer.getFailedCount());
+        Assert.assertEquals(99, rows());
+    }
+}
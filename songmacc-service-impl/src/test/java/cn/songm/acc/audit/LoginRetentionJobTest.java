@@ -0,0 +1,77 @@
+package cn.songm.acc.audit;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import cn.songm.acc.dao.UserLoginDao;
+import cn.songm.acc.entity.UserLogin;
+
+/**
+ * 登入日志清理测试（H2内存数据库，未分区）
+ *
+ * @author zhangsong
+ *
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:app-acc-h2.xml" })
+public class LoginRetentionJobTest {
+
+    @Autowired
+    private UserLoginDao userLoginDao;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void setUp() {
+        jdbcTemplate.update("delete from acc_user_login");
+    }
+
+    private void insert(int count, int monthsAgo, String prefix) {
+        Calendar c = Calendar.getInstance();
+        c.add(Calendar.MONTH, -monthsAgo);
+        Date created = c.getTime();
+        List<UserLogin> logins = new ArrayList<UserLogin>();
+        for (int i = 0; i < count; i++) {
+            UserLogin login = new UserLogin();
+            login.setNo(prefix + i);
+            login.setCreated(created);
+            login.setUpdated(created);
+            login.setAccount("account" + i);
+            login.setLtime(created);
+            login.setLflag(true);
+            logins.add(login);
+        }
+        userLoginDao.insertBatch(logins);
+    }
+
+    @Test
+    public void testPurgeInBatches() {
+        insert(2500, 7, "old");
+        insert(10, 1, "new");
+
+        LoginRetentionJob job = new LoginRetentionJob();
+        ReflectionTestUtils.setField(job, "userLoginDao", userLoginDao);
+        ReflectionTestUtils.setField(job, "months", 6);
+        ReflectionTestUtils.setField(job, "batchSize", 1000);
+        ReflectionTestUtils.setField(job, "pause", 0L);
+        ReflectionTestUtils.setField(job, "running", true);
+        job.execute();
+
+        Assert.assertEquals(2500, job.getDeletedRows());
+        Assert.assertEquals(Integer.valueOf(10),
+                jdbcTemplate.queryForObject("select count(1) from acc_user_login", Integer.class));
+        Assert.assertNotNull(job.getLastRun());
+    }
+}
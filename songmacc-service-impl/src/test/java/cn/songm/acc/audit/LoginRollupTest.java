@@ -0,0 +1,183 @@
+package cn.songm.acc.audit;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import cn.songm.acc.dao.UserLoginStatDao;
+import cn.songm.acc.entity.UserLoginStat;
+
+/**
+ * 登入次数汇总测试（H2内存数据库）
+ *
+ * @author zhangsong
+ *
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:app-acc-h2.xml" })
+public class LoginRollupTest {
+
+    @Autowired
+    private UserLoginStatDao userLoginStatDao;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private LoginRollup rollup;
+
+    @Before
+    public void setUp() {
+        jdbcTemplate.update("delete from acc_user_login_stat");
+        rollup = new LoginRollup();
+        ReflectionTestUtils.setField(rollup, "userLoginStatDao", userLoginStatDao);
+        ReflectionTestUtils.setField(rollup, "bucket", 3600);
+        ReflectionTestUtils.setField(rollup, "maxKeys", 100000);
+        // 不启动定时写入，由测试调用flush
+    }
+
+    @Test
+    public void testConcurrentCountsAreAdded() throws Exception {
+        final int threads = 8;
+        final int perThread = 10000;
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            Thread w = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        rollup.record("account" + (i % 10), (long) (i % 10), i % 4 != 0);
+                    }
+                }
+            });
+            w.start();
+            workers.add(w);
+        }
+        // 记录过程中反复写入，计数不能丢失或重复
+        for (Thread w : workers) {
+            while (w.isAlive()) {
+                rollup.flush();
+            }
+        }
+        rollup.flush();
+
+        Date begin = new Date(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2));
+        Date end = new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+        UserLoginStat stat = userLoginStatDao.sumByAccount("account1", begin, end);
+        Assert.assertEquals(threads * perThread / 10, stat.getSuccessCount() + stat.getFailureCount());
+        Assert.assertEquals(Long.valueOf(1), stat.getUserId());
+
+        UserLoginStat byUser = userLoginStatDao.sumByUser(1L, begin, end);
+        Assert.assertEquals(stat.getSuccessCount(), byUser.getSuccessCount());
+
+        // 只有偶数号账号有失败（i%4==0）
+        List<UserLoginStat> top = userLoginStatDao.listTopFailures(begin, end, 10);
+        Assert.assertEquals(5, top.size());
+        for (UserLoginStat s : top) {
+            Assert.assertEquals(Long.valueOf(threads * perThread / 20), s.getFailureCount());
+        }
+        long total = jdbcTemplate.queryForObject(
+                "select sum(success_count) + sum(failure_count) from acc_user_login_stat", Long.class);
+        Assert.assertEquals(threads * perThread, total);
+    }
+
+    @Test
+    public void testTruncateLongAccount() {
+        StringBuilder account = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            account.append('a');
+        }
+        rollup.record(account.toString(), null, false);
+        rollup.flush();
+        Assert.assertEquals(0, rollup.getFlushFailures());
+        Assert.assertEquals(account.substring(0, 50),
+                jdbcTemplate.queryForObject("select account from acc_user_login_stat", String.class));
+    }
+
+    @Test
+    public void testDropPoisonRow() {
+        // 包含poison账号的写入总是失败，其它行正常写入
+        ReflectionTestUtils.setField(rollup, "userLoginStatDao", (UserLoginStatDao) Proxy.newProxyInstance(
+                UserLoginStatDao.class.getClassLoader(), new Class<?>[] { UserLoginStatDao.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("upsertBatch")) {
+                            for (Object stat : (List<?>) args[0]) {
+                                if ("poison".equals(((UserLoginStat) stat).getAccount())) {
+                                    throw new IllegalStateException("Data too long");
+                                }
+                            }
+                        }
+                        try {
+                            return method.invoke(userLoginStatDao, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    }
+                }));
+        rollup.record("poison", null, false);
+        for (int i = 0; i < 3; i++) {
+            rollup.record("account" + i, (long) i, true);
+            rollup.flush();
+        }
+        // 每次都有其它行写入成功，poison连续失败3次后丢弃
+        Assert.assertEquals(1, rollup.getDroppedRows());
+        Assert.assertEquals(0, rollup.getPendingKeys());
+        Assert.assertEquals(3, rollup.getRowsWritten());
+        Assert.assertEquals(3L, jdbcTemplate.queryForObject(
+                "select sum(success_count) from acc_user_login_stat", Long.class).longValue());
+    }
+
+    @Test
+    public void testKeepRowsWhenDatabaseDown() {
+        ReflectionTestUtils.setField(rollup, "userLoginStatDao", (UserLoginStatDao) Proxy.newProxyInstance(
+                UserLoginStatDao.class.getClassLoader(), new Class<?>[] { UserLoginStatDao.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        throw new IllegalStateException("Connection refused");
+                    }
+                }));
+        for (int i = 0; i < 20; i++) {
+            rollup.record("account" + i, null, true);
+        }
+        for (int i = 0; i < 5; i++) {
+            rollup.flush();
+        }
+        // 没有任何一行写入成功，不计失败次数，计数全部保留
+        Assert.assertEquals(0, rollup.getDroppedRows());
+        Assert.assertEquals(20, rollup.getPendingKeys());
+
+        ReflectionTestUtils.setField(rollup, "userLoginStatDao", userLoginStatDao);
+        rollup.flush();
+        Assert.assertEquals(20L, jdbcTemplate.queryForObject(
+                "select sum(success_count) from acc_user_login_stat", Long.class).longValue());
+    }
+
+    @Test
+    public void testMaxKeys() {
+        ReflectionTestUtils.setField(rollup, "maxKeys", 10);
+        for (int i = 0; i < 20; i++) {
+            rollup.record("account" + i, null, false);
+        }
+        // 已有的账号继续计数
+        rollup.record("account0", null, false);
+        Assert.assertEquals(10, rollup.getPendingKeys());
+        Assert.assertEquals(10, rollup.getDroppedRecords());
+        Assert.assertEquals(11, rollup.getRecordedCount());
+    }
+}
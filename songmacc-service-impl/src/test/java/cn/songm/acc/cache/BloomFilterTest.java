@@ -0,0 +1,34 @@
+package cn.songm.acc.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BloomFilterTest {
+
+    @Test
+    public void testNoFalseNegative() {
+        BloomFilter f = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            f.add("user" + i);
+        }
+        for (int i = 0; i < 10000; i++) {
+            Assert.assertTrue(f.mightContain("user" + i));
+        }
+    }
+
+    @Test
+    public void testFalsePositiveRate() {
+        BloomFilter f = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            f.add("user" + i);
+        }
+        int positives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (f.mightContain("other" + i)) {
+                positives++;
+            }
+        }
+        // 期望1%，留出余量
+        Assert.assertTrue("false positives: " + positives, positives < 2000);
+    }
+}
@@ -0,0 +1,70 @@
+package cn.songm.acc.cache;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LocalCacheTest {
+
+    @Test
+    public void testExpireOnGet() throws InterruptedException {
+        LocalCache<String, String> c = new LocalCache<String, String>(100, 50, TimeUnit.MILLISECONDS);
+        c.put("a", "1");
+        Assert.assertEquals("1", c.get("a"));
+        Thread.sleep(100);
+        Assert.assertNull(c.get("a"));
+        Assert.assertEquals(0, c.size());
+        Assert.assertEquals(1, c.getExpirationCount());
+        Assert.assertEquals(1, c.getHitCount());
+        Assert.assertEquals(1, c.getMissCount());
+    }
+
+    @Test
+    public void testCleanUp() throws InterruptedException {
+        LocalCache<String, String> c = new LocalCache<String, String>(100, 50, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 10; i++) {
+            c.put("k" + i, "v" + i);
+        }
+        c.cleanUp();
+        Assert.assertEquals(10, c.size());
+        Thread.sleep(100);
+        c.put("fresh", "v");
+        // 不再读取的过期条目也被删除，未过期的保留
+        c.cleanUp();
+        Assert.assertEquals(1, c.size());
+        Assert.assertEquals(10, c.getExpirationCount());
+        Assert.assertEquals("v", c.get("fresh"));
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() {
+        // 16段，每段2个条目；0、16、32落在同一段
+        LocalCache<Integer, String> c = new LocalCache<Integer, String>(32, 1, TimeUnit.MINUTES);
+        c.put(0, "a");
+        c.put(16, "b");
+        Assert.assertEquals("a", c.get(0));
+        c.put(32, "c");
+        Assert.assertNull(c.get(16));
+        Assert.assertEquals("a", c.get(0));
+        Assert.assertEquals("c", c.get(32));
+        Assert.assertEquals(1, c.getEvictionCount());
+        // 其它段不受影响
+        c.put(1, "d");
+        Assert.assertEquals(3, c.size());
+        Assert.assertEquals(1, c.getEvictionCount());
+    }
+
+    @Test
+    public void testRemoveAndClear() {
+        LocalCache<String, String> c = new LocalCache<String, String>(100, 1, TimeUnit.MINUTES);
+        c.put("a", "1");
+        c.put("b", "2");
+        c.remove("a");
+        Assert.assertNull(c.get("a"));
+        Assert.assertEquals("2", c.get("b"));
+        c.clear();
+        Assert.assertEquals(0, c.size());
+        Assert.assertEquals(0.5D, c.getHitRatio(), 1e-9);
+    }
+}
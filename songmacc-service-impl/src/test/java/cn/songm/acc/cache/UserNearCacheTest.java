@@ -0,0 +1,69 @@
+package cn.songm.acc.cache;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import cn.songm.acc.entity.User;
+
+public class UserNearCacheTest {
+
+    private UserNearCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new UserNearCache();
+        ReflectionTestUtils.setField(cache, "maxSize", 100);
+        ReflectionTestUtils.setField(cache, "ttl", 60L);
+        cache.init();
+    }
+
+    @After
+    public void tearDown() {
+        cache.destroy();
+    }
+
+    private static User user(long userId) {
+        User u = new User();
+        u.setUserId(userId);
+        return u;
+    }
+
+    private static DefaultMessage message(String body) {
+        return new DefaultMessage(UserNearCache.CHANNEL.getBytes(StandardCharsets.UTF_8),
+                body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testInvalidateFromOtherNode() {
+        cache.putUser(user(1L));
+        cache.putPrivacy(user(1L));
+        cache.putUser(user(2L));
+        cache.onMessage(message("other-node:1"), null);
+        Assert.assertNull(cache.getUser(1L));
+        Assert.assertNull(cache.getPrivacy(1L));
+        Assert.assertNotNull(cache.getUser(2L));
+    }
+
+    @Test
+    public void testIgnoreOwnMessage() {
+        cache.putUser(user(1L));
+        String nodeId = (String) ReflectionTestUtils.getField(cache, "nodeId");
+        cache.onMessage(message(nodeId + ":1"), null);
+        Assert.assertNotNull(cache.getUser(1L));
+    }
+
+    @Test
+    public void testIllegalMessage() {
+        cache.putUser(user(1L));
+        cache.onMessage(message("no-separator"), null);
+        cache.onMessage(message("other-node:abc"), null);
+        Assert.assertNotNull(cache.getUser(1L));
+        Assert.assertEquals(1, cache.getUserSize());
+    }
+}
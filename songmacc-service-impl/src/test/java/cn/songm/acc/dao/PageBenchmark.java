@@ -0,0 +1,98 @@
+package cn.songm.acc.dao;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.mybatis.spring.SqlSessionTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import cn.songm.acc.dao.impl.UserDaoImpl;
+import cn.songm.acc.entity.SeekPage;
+import cn.songm.acc.entity.User;
+
+/**
+ * 分页基准测试：偏移分页与游标分页（H2内存数据库）
+ *
+ * 运行：在IDE中执行main，或mvn test-compile后以测试classpath运行本类。
+ * 偏移分页的耗时随页码线性增长，游标分页与页码无关。
+ *
+ * @author zhangsong
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PageBenchmark {
+
+    private static final int USERS = 100000;
+    private static final int PAGE_SIZE = 100;
+
+    @Param({ "0", "100", "500", "900" })
+    private int page;
+
+    private ClassPathXmlApplicationContext context;
+    private UserDao userDao;
+    private SqlSessionTemplate sessionTemplate;
+    private String cursor;
+
+    @Setup
+    public void setUp() {
+        context = new ClassPathXmlApplicationContext("app-acc-h2.xml");
+        userDao = context.getBean(UserDao.class);
+        sessionTemplate = context.getBean(SqlSessionTemplate.class);
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        jdbcTemplate.update("delete from acc_user");
+        UserPageSeekTest.insertUsers(jdbcTemplate, USERS);
+        // 逐页取到基准页的游标
+        cursor = null;
+        for (int p = 0; p < page; p++) {
+            SeekPage<User> result = userDao.listPageSeek(cursor, PAGE_SIZE, null);
+            cursor = result.getNextCursor();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<User> offsetPage() {
+        Map<String, Object> param = new HashMap<String, Object>();
+        param.put("pageFirst", page * PAGE_SIZE);
+        param.put("pageSize", PAGE_SIZE);
+        return sessionTemplate.selectList(UserDaoImpl.class.getName() + ".listPage", param);
+    }
+
+    @Benchmark
+    public SeekPage<User> seekPage() {
+        return userDao.listPageSeek(cursor, PAGE_SIZE, null);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PageBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
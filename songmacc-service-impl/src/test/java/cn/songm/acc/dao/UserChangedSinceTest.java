@@ -0,0 +1,87 @@
+package cn.songm.acc.dao;
+
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import cn.songm.acc.entity.User;
+
+/**
+ * 增量同步查询测试（H2内存数据库）
+ *
+ * @author zhangsong
+ *
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:app-acc-h2.xml" })
+public class UserChangedSinceTest {
+
+    private static final int USERS = 1000;
+
+    @Autowired
+    private UserDao userDao;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private long base;
+
+    @Before
+    public void setUp() {
+        jdbcTemplate.update("delete from acc_user");
+        base = System.currentTimeMillis() - 3600 * 1000L;
+        for (int i = 1; i <= USERS; i++) {
+            // 每5个用户同一更新时间，ID与更新时间顺序相反
+            Timestamp updated = new Timestamp(base + (USERS - i) / 5 * 1000L);
+            jdbcTemplate.update("insert into acc_user (user_id, account, nickname, created, updated) values (?, ?, ?, ?, ?)",
+                    i, "account" + i, "nick" + i, updated, updated);
+        }
+    }
+
+    @Test
+    public void testWatermark() {
+        Date until = new Date();
+        Set<Long> seen = new HashSet<Long>();
+        Date updated = null;
+        Long userId = null;
+        int batches = 0;
+        while (true) {
+            List<User> users = userDao.queryChangedSince(updated, userId, until, 7);
+            if (users.isEmpty()) {
+                break;
+            }
+            batches++;
+            for (User u : users) {
+                Assert.assertTrue("duplicate " + u.getUserId(), seen.add(u.getUserId()));
+                if (updated != null) {
+                    int c = u.getUpdated().compareTo(updated);
+                    Assert.assertTrue(c > 0 || c == 0 && u.getUserId() > userId);
+                }
+                updated = u.getUpdated();
+                userId = u.getUserId();
+            }
+        }
+        Assert.assertEquals(USERS, seen.size());
+        Assert.assertEquals((USERS + 6) / 7, batches);
+
+        // 水位之后的修改会被再次读到
+        Timestamp now = new Timestamp(until.getTime() - 1000);
+        jdbcTemplate.update("update acc_user set updated = ?, nickname = 'changed' where user_id = 500", now);
+        List<User> changed = userDao.queryChangedSince(updated, userId, until, 7);
+        Assert.assertEquals(1, changed.size());
+        Assert.assertEquals("changed", changed.get(0).getNickname());
+
+        // until之后的修改暂不返回
+        Assert.assertTrue(userDao.queryChangedSince(now, 500L, now, 7).isEmpty());
+    }
+}
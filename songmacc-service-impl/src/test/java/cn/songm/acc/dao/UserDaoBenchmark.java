@@ -0,0 +1,132 @@
+package cn.songm.acc.dao;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import cn.songm.acc.entity.User;
+import cn.songm.common.utils.CodeUtils;
+
+/**
+ * 用户DAO基准测试（H2内存数据库）：登入校验两次查询与一次查询，注册先统计再插入与只插入
+ *
+ * 运行：在IDE中执行main，或mvn test-compile后以测试classpath运行本类。
+ * H2只反映语句条数的差别，不含网络往返，实际MySQL上差距更大。
+ * 注册每次插入一个新用户，表随测量增长，两种方式的插入条数相同。
+ *
+ * @author zhangsong
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserDaoBenchmark {
+
+    private static final int USERS = 10000;
+
+    private ClassPathXmlApplicationContext context;
+    private UserDao userDao;
+    private final AtomicLong ids = new AtomicLong(USERS);
+    private int next;
+
+    @Setup
+    public void setUp() {
+        context = new ClassPathXmlApplicationContext("app-acc-h2.xml");
+        userDao = context.getBean(UserDao.class);
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        jdbcTemplate.update("delete from acc_user");
+        String password = CodeUtils.md5("123456");
+        for (long i = 1; i <= USERS; i++) {
+            User user = new User(i);
+            user.setAccount("account" + i);
+            user.setPassword(password);
+            user.setNickname("nick" + i);
+            userDao.insert(user);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    private String account() {
+        next = next % USERS + 1;
+        return "account" + next;
+    }
+
+    /** 原登入校验：先查密码，再查用户信息 */
+    @Benchmark
+    public User twoQueries() {
+        String account = account();
+        String pwd = userDao.queryPwdByAccount(account);
+        if (pwd == null) {
+            return null;
+        }
+        return userDao.queryByAccount(account);
+    }
+
+    /** 新登入校验：一次查询 */
+    @Benchmark
+    public User oneQuery() {
+        return userDao.queryCredentialByAccount(account());
+    }
+
+    private User newUser(String prefix) {
+        long userId = ids.incrementAndGet();
+        User user = new User(userId);
+        user.setAccount(prefix + userId);
+        user.setPassword(CodeUtils.md5("123456"));
+        user.setNickname(prefix + userId);
+        return user;
+    }
+
+    /** 原注册：统计账号、昵称后插入 */
+    @Benchmark
+    public boolean countThenInsert() {
+        User user = newUser("c");
+        if (userDao.countByAccount(user.getAccount()) != 0
+                || userDao.countByNick(user.getNickname()) != 0) {
+            return false;
+        }
+        userDao.insert(user);
+        return true;
+    }
+
+    /** 新注册：直接插入，依赖唯一索引 */
+    @Benchmark
+    public boolean insertOnly() {
+        try {
+            userDao.insert(newUser("i"));
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(UserDaoBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,86 @@
+package cn.songm.acc.dao;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import cn.songm.acc.entity.User;
+import cn.songm.common.utils.CodeUtils;
+
+/**
+ * 用户DAO测试（H2内存数据库），性能对比见{@link UserDaoBenchmark}
+ *
+ * @author zhangsong
+ *
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:app-acc-h2.xml" })
+public class UserDaoTest {
+
+    private static final int USERS = 100;
+
+    @Autowired
+    private UserDao userDao;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void setUp() {
+        jdbcTemplate.update("delete from acc_user");
+        String password = CodeUtils.md5("123456");
+        for (long i = 1; i <= USERS; i++) {
+            User user = new User(i);
+            user.setAccount("account" + i);
+            user.setPassword(password);
+            user.setNickname("nick" + i);
+            userDao.insert(user);
+        }
+    }
+
+    private User newUser(long userId, String account, String nickname) {
+        User user = new User(userId);
+        user.setAccount(account);
+        user.setPassword(CodeUtils.md5("123456"));
+        user.setNickname(nickname);
+        return user;
+    }
+
+    @Test
+    public void testRegisterInsert() {
+        userDao.insert(newUser(USERS + 1, "fresh", "fresh"));
+        Assert.assertEquals(1, userDao.countByAccount("fresh"));
+
+        // 账号、昵称重复由唯一索引拒绝
+        try {
+            userDao.insert(newUser(USERS + 2, "account1", "other"));
+            Assert.fail("duplicate account expected");
+        } catch (DuplicateKeyException e) {
+        }
+        try {
+            userDao.insert(newUser(USERS + 3, "other", "nick1"));
+            Assert.fail("duplicate nickname expected");
+        } catch (DuplicateKeyException e) {
+        }
+        Assert.assertEquals(0, userDao.countByAccount("other"));
+    }
+
+    @Test
+    public void testCredentialLookup() {
+        User u = userDao.queryCredentialByAccount("account1");
+        Assert.assertNotNull(u);
+        Assert.assertEquals(Long.valueOf(1L), u.getUserId());
+        Assert.assertEquals("nick1", u.getNickname());
+        Assert.assertEquals(CodeUtils.md5("123456"), u.getPassword());
+        Assert.assertNull(userDao.queryCredentialByAccount("nobody"));
+
+        // 与原来两次查询的结果一致
+        Assert.assertEquals(userDao.queryPwdByAccount("account1"), u.getPassword());
+        Assert.assertEquals(userDao.queryByAccount("account1").getNickname(), u.getNickname());
+    }
+}
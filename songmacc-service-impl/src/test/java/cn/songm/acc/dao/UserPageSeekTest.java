@@ -0,0 +1,112 @@
+package cn.songm.acc.dao;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import cn.songm.acc.entity.SeekPage;
+import cn.songm.acc.entity.User;
+
+/**
+ * 游标分页测试（H2内存数据库），与偏移分页的性能对比见{@link PageBenchmark}
+ *
+ * @author zhangsong
+ *
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:app-acc-h2.xml" })
+public class UserPageSeekTest {
+
+    private static final int USERS = 1000;
+    private static final int PAGE_SIZE = 30;
+
+    @Autowired
+    private UserDao userDao;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void setUp() {
+        jdbcTemplate.update("delete from acc_user");
+        insertUsers(jdbcTemplate, USERS);
+    }
+
+    /**
+     * 每10个用户同一创建时间，验证相同created时按user_id分页
+     */
+    static void insertUsers(JdbcTemplate jdbcTemplate, final int users) {
+        final long base = System.currentTimeMillis() - users * 1000L;
+        jdbcTemplate.batchUpdate(
+                "insert into acc_user (user_id, account, nickname, created, updated) values (?, ?, ?, ?, ?)",
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Timestamp created = new Timestamp(base + i / 10 * 1000L);
+                        ps.setLong(1, i + 1);
+                        ps.setString(2, "account" + i);
+                        ps.setString(3, "nick" + i);
+                        ps.setTimestamp(4, created);
+                        ps.setTimestamp(5, created);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return users;
+                    }
+                });
+    }
+
+    @Test
+    public void testSeekPages() {
+        // 遍历全部页，不重复、不遗漏，且按(created, user_id)倒序
+        Set<Long> ids = new HashSet<Long>();
+        User last = null;
+        String cursor = null;
+        int pages = 0;
+        do {
+            SeekPage<User> p = userDao.listPageSeek(cursor, PAGE_SIZE, null);
+            Assert.assertTrue(p.getList().size() <= PAGE_SIZE);
+            for (User u : p.getList()) {
+                Assert.assertTrue("duplicate " + u.getUserId(), ids.add(u.getUserId()));
+                if (last != null) {
+                    int c = u.getCreated().compareTo(last.getCreated());
+                    Assert.assertTrue("order " + u.getUserId(),
+                            c < 0 || c == 0 && u.getUserId() < last.getUserId());
+                }
+                last = u;
+            }
+            cursor = p.getNextCursor();
+            pages++;
+        } while (cursor != null);
+        Assert.assertEquals(USERS, ids.size());
+        Assert.assertEquals((USERS + PAGE_SIZE - 1) / PAGE_SIZE, pages);
+    }
+
+    @Test
+    public void testLastFullPage() {
+        // 最后一页刚好满页时不再返回游标
+        jdbcTemplate.update("delete from acc_user where user_id > ?", PAGE_SIZE * 2);
+        SeekPage<User> p = userDao.listPageSeek(null, PAGE_SIZE, null);
+        Assert.assertNotNull(p.getNextCursor());
+        p = userDao.listPageSeek(p.getNextCursor(), PAGE_SIZE, null);
+        Assert.assertEquals(PAGE_SIZE, p.getList().size());
+        Assert.assertNull(p.getNextCursor());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCursor() {
+        userDao.listPageSeek("not-a-cursor", PAGE_SIZE, null);
+    }
+}
@@ -0,0 +1,120 @@
+package cn.songm.acc.export;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import cn.songm.acc.dao.UserDao;
+
+/**
+ * 用户全量导出测试（H2内存数据库）
+ *
+ * @author zhangsong
+ *
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:app-acc-h2.xml" })
+public class UserExporterTest {
+
+    private static final int USERS = 100000;
+
+    @Autowired
+    private UserDao userDao;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private UserExporter exporter;
+
+    @Before
+    public void setUp() {
+        jdbcTemplate.update("delete from acc_user");
+        final Timestamp now = new Timestamp(System.currentTimeMillis());
+        jdbcTemplate.batchUpdate(
+                "insert into acc_user (user_id, account, nickname, summary, created, updated) values (?, ?, ?, ?, ?, ?)",
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        ps.setLong(1, i + 1);
+                        ps.setString(2, "account" + i);
+                        ps.setString(3, "nick" + i);
+                        ps.setString(4, i == 0 ? "a,\"b\"" : null);
+                        ps.setTimestamp(5, now);
+                        ps.setTimestamp(6, now);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return USERS;
+                    }
+                });
+        exporter = new UserExporter();
+        ReflectionTestUtils.setField(exporter, "userDao", userDao);
+    }
+
+    /**
+     * 只计数不保存的输出流
+     */
+    private static class CountingOutputStream extends OutputStream {
+        long bytes;
+        long lines;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+            if (b == '\n') {
+                lines++;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+            for (int i = off; i < off + len; i++) {
+                if (b[i] == '\n') {
+                    lines++;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCsv() throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        long start = System.nanoTime();
+        long n = exporter.export(out, UserExporter.Format.CSV);
+        long nanos = System.nanoTime() - start;
+
+        Assert.assertEquals(USERS, n);
+        Assert.assertEquals(USERS + 1, out.lines);
+        Assert.assertEquals(USERS, exporter.getExportedRows());
+        Assert.assertFalse(exporter.isRunning());
+        System.out.println(String.format("csv export: %d rows, %d bytes, %.0f rows/s",
+                n, out.bytes, n * 1e9 / nanos));
+    }
+
+    @Test
+    public void testCsvEscape() throws IOException {
+        jdbcTemplate.update("delete from acc_user where user_id > 1");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exporter.export(out, UserExporter.Format.CSV);
+        String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        Assert.assertEquals(2, lines.length);
+        Assert.assertTrue(lines[0].startsWith("user_id,account,nickname"));
+        Assert.assertTrue(lines[1].startsWith("1,account0,nick0,,,,,,,,,\"a,\"\"b\"\"\","));
+    }
+}
@@ -0,0 +1,59 @@
+package cn.songm.acc.imports;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.sql.DataSource;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import cn.songm.acc.metrics.SqlMetricsInterceptor;
+
+/**
+ * 批量导入命令行上下文测试
+ *
+ * 加载UserImportApp使用的app-acc-import.xml，只把数据源换成H2内存数据库。
+ *
+ * @author zhangsong
+ *
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:app-acc-import-h2.xml" })
+public class UserImportContextTest {
+
+    @Autowired
+    private UserImporter importer;
+    @Autowired
+    private SqlMetricsInterceptor sqlMetrics;
+    @Autowired
+    private DataSource dataSource;
+
+    @Test
+    public void testContext() throws IOException {
+        // 命令行不创建存在缓存，只用Redis发布重建消息
+        Assert.assertNull(ReflectionTestUtils.getField(importer, "userExistenceCache"));
+        Assert.assertNotNull(ReflectionTestUtils.getField(importer, "cacheRedisTemplate"));
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.update("delete from acc_user");
+        jdbcTemplate.update("insert into acc_user (user_id, account, nickname) values (1, 'exists', 'exists')");
+        String csv = "account,password,nickname\n"
+                + "exists,123456,nick1\n";
+        UserImporter.Summary summary = importer.importUsers(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), new ByteArrayOutputStream());
+        Assert.assertEquals(1, summary.getTotal());
+        Assert.assertEquals(0, summary.getImported());
+        Assert.assertEquals(1, summary.getRejected());
+        // 校验时查询了数据库，语句经过共享配置中的监控插件
+        Assert.assertTrue(sqlMetrics.getCallCount() > 0);
+    }
+}
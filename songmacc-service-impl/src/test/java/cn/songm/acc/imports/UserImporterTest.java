@@ -0,0 +1,152 @@
+package cn.songm.acc.imports;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import cn.songm.acc.cache.UserExistenceCache;
+import cn.songm.acc.dao.UserDao;
+import cn.songm.acc.keyword.KeywordFilter;
+import cn.songm.acc.password.PasswordEncoder;
+import cn.songm.acc.sequence.UserIdGenerator;
+
+/**
+ * 用户批量导入测试（H2内存数据库）
+ *
+ * @author zhangsong
+ *
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:app-acc-h2.xml" })
+public class UserImporterTest {
+
+    private static final int USERS = 100000;
+
+    @Autowired
+    private UserDao userDao;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private UserImporter importer;
+    private AtomicInteger reloads;
+
+    @Before
+    public void setUp() throws IOException {
+        jdbcTemplate.update("delete from acc_user");
+        // H2中没有序列函数，用内存计数代替
+        final AtomicLong seq = new AtomicLong(1000);
+        UserIdGenerator generator = new UserIdGenerator() {
+            @Override
+            public long leaseBlock(int size) {
+                return seq.addAndGet(size) - size + 1;
+            }
+        };
+        KeywordFilter keywordFilter = new KeywordFilter();
+        ReflectionTestUtils.setField(keywordFilter, "accountLocation", "classpath:keyword/account.txt");
+        ReflectionTestUtils.setField(keywordFilter, "nicknameLocation", "classpath:keyword/nickname.txt");
+        keywordFilter.init();
+        PasswordEncoder passwordEncoder = new PasswordEncoder();
+        ReflectionTestUtils.setField(passwordEncoder, "iterations", 1);
+        ReflectionTestUtils.setField(passwordEncoder, "queueSize", 10);
+        passwordEncoder.init();
+        importer = new UserImporter();
+        ReflectionTestUtils.setField(importer, "passwordEncoder", passwordEncoder);
+        ReflectionTestUtils.setField(importer, "keywordFilter", keywordFilter);
+        ReflectionTestUtils.setField(importer, "userDao", userDao);
+        ReflectionTestUtils.setField(importer, "userIdGenerator", generator);
+        ReflectionTestUtils.setField(importer, "chunkSize", 1000);
+        ReflectionTestUtils.setField(importer, "threads", 4);
+        reloads = new AtomicInteger();
+        ReflectionTestUtils.setField(importer, "userExistenceCache", new UserExistenceCache() {
+            @Override
+            public void reload() {
+                reloads.incrementAndGet();
+            }
+        });
+    }
+
+    @Test
+    public void testImport() throws IOException {
+        StringBuilder csv = new StringBuilder("account,password,nickname,gender,birth_year,birth_month,birth_day,summary\n");
+        for (int i = 0; i < USERS; i++) {
+            csv.append("user").append(i).append(",123456,nick").append(i)
+                    .append(",1,1990,1,15,\"a,\"\"b\"\"\n c\"\n");
+        }
+        long start = System.nanoTime();
+        UserImporter.Summary summary = importer.importUsers(
+                new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)),
+                new ByteArrayOutputStream());
+        long nanos = System.nanoTime() - start;
+
+        Assert.assertEquals(USERS, summary.getTotal());
+        Assert.assertEquals(USERS, summary.getImported());
+        Assert.assertEquals(0, summary.getRejected());
+        Assert.assertEquals(USERS, jdbcTemplate.queryForObject("select count(1) from acc_user", Long.class).longValue());
+        Assert.assertEquals("a,\"b\"\n c", jdbcTemplate.queryForObject(
+                "select summary from acc_user where account = 'user7'", String.class));
+        // 导入的账号、昵称不经过taken，结束后重建存在缓存
+        Assert.assertEquals(1, reloads.get());
+        System.out.println(String.format("import: %d rows, %.0f rows/s", USERS, USERS * 1e9 / nanos));
+    }
+
+    @Test
+    public void testRejects() throws IOException {
+        jdbcTemplate.update("insert into acc_user (user_id, account, nickname) values (1, 'exists', 'exists')");
+        String csv = "account,password,nickname,birth_year,birth_month,birth_day\n"
+                + "good1,123456,nick1,,,\n"
+                + "bad,123456,nick2,,,\n"          // 账号太短
+                + "good3,123,nick3,,,\n"           // 密码太短
+                + "good4,123456,nick4,2001,2,30\n" // 日期不存在
+                + "exists,123456,nick5,,,\n"       // 库中已存在
+                + "good6,123456,exists,,,\n"       // 昵称已存在
+                + "good1,123456,nick7,,,\n"        // 块内重复
+                + ",123456,nick8,,,\n";            // 没有账号
+        ByteArrayOutputStream rejects = new ByteArrayOutputStream();
+        UserImporter.Summary summary = importer.importUsers(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), rejects);
+
+        Assert.assertEquals(8, summary.getTotal());
+        Assert.assertEquals(2, summary.getImported());
+        Assert.assertEquals(6, summary.getRejected());
+        String[] lines = new String(rejects.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        Assert.assertEquals(7, lines.length);
+        Assert.assertEquals("account,password,nickname,birth_year,birth_month,birth_day,error", lines[0]);
+        Assert.assertEquals("bad,123456,nick2,,,,\"账号格式错误\"", lines[1]);
+        Assert.assertEquals("good4,123456,nick4,2001,2,30,\"生日格式错误\"", lines[3]);
+        Assert.assertEquals("exists,123456,nick5,,,,\"账号已经被使用\"", lines[4]);
+        Assert.assertEquals("good1,123456,nick7,,,,\"账号重复\"", lines[6]);
+    }
+
+    @Test
+    public void testBatchFallback() throws IOException {
+        ReflectionTestUtils.setField(importer, "chunkSize", 2);
+        // 跨块重复在后一块校验时前一块可能还未写入，此时由唯一索引发现，整块回滚后逐行重试
+        String csv = "account,password,nickname\n"
+                + "user1,123456,nick1\n"
+                + "user2,123456,nick2\n"
+                + "user3,123456,nick3\n"
+                + "user1,123456,nick4\n";
+        ByteArrayOutputStream rejects = new ByteArrayOutputStream();
+        UserImporter.Summary summary = importer.importUsers(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), rejects);
+
+        Assert.assertEquals(3, summary.getImported());
+        Assert.assertEquals(1, summary.getRejected());
+        Assert.assertTrue(importer.getBatchFallbacks() <= 1);
+        Assert.assertTrue(new String(rejects.toByteArray(), StandardCharsets.UTF_8)
+                .contains("user1,123456,nick4,\"账号已经被使用\""));
+    }
+}
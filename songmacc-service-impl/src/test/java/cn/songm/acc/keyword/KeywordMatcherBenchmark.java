@@ -0,0 +1,98 @@
+package cn.songm.acc.keyword;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 关键字匹配基准测试：逐个indexOf与自动机一次扫描
+ *
+ * 运行：在IDE中执行main，或mvn test-compile后以测试classpath运行本类。
+ * 关键字和输入都是随机小写字母，输入基本不含关键字，即注册时最常见、也是必须扫描完整个输入的情况。
+ *
+ * @author zhangsong
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeywordMatcherBenchmark {
+
+    @Param({ "1", "100", "1000", "10000" })
+    private int words;
+
+    private List<String> dictionary;
+    private KeywordMatcher matcher;
+    private String[] inputs;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(7);
+        dictionary = new ArrayList<String>(words);
+        for (int i = 0; i < words; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = 4 + random.nextInt(4);
+            for (int j = 0; j < length; j++) {
+                sb.append((char) ('a' + random.nextInt(26)));
+            }
+            dictionary.add(sb.toString());
+        }
+        matcher = new KeywordMatcher(dictionary);
+        inputs = new String[64];
+        for (int i = 0; i < inputs.length; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = 5 + random.nextInt(20);
+            for (int j = 0; j < length; j++) {
+                sb.append((char) ('a' + random.nextInt(26)));
+            }
+            inputs[i] = sb.toString();
+        }
+    }
+
+    private String input() {
+        next = (next + 1) & (inputs.length - 1);
+        return inputs[next];
+    }
+
+    @Benchmark
+    public boolean indexOfLoop() {
+        String text = input();
+        for (String w : dictionary) {
+            if (text.indexOf(w) > -1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Benchmark
+    public boolean automaton() {
+        return matcher.matches(input());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(KeywordMatcherBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,97 @@
+package cn.songm.acc.keyword;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class KeywordMatcherTest {
+
+    @Test
+    public void testOverlapping() {
+        KeywordMatcher m = new KeywordMatcher(Arrays.asList("he", "she", "hers", "松美"));
+        Assert.assertEquals("she", m.find("ushers"));
+        Assert.assertEquals("he", m.find("xHEx"));
+        Assert.assertEquals("松美", m.find("我是松美人"));
+        Assert.assertNull(m.find("sh"));
+        Assert.assertNull(KeywordMatcher.empty().find("anything"));
+    }
+
+    /**
+     * 与逐个indexOf的结果比较
+     */
+    @Test
+    public void testAgainstIndexOf() {
+        Random random = new Random(1);
+        for (int round = 0; round < 2000; round++) {
+            List<String> words = new ArrayList<String>();
+            int n = random.nextInt(20);
+            for (int i = 0; i < n; i++) {
+                words.add(randomText(random, 1 + random.nextInt(4)));
+            }
+            KeywordMatcher m = new KeywordMatcher(words);
+            for (int q = 0; q < 50; q++) {
+                String text = randomText(random, random.nextInt(12));
+                boolean expected = false;
+                for (String w : words) {
+                    expected |= text.indexOf(w) > -1;
+                }
+                String found = m.find(text);
+                Assert.assertEquals(words + " / " + text, expected, found != null);
+                if (found != null) {
+                    Assert.assertTrue(text.contains(found));
+                }
+            }
+        }
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(3)));
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testReload() throws IOException {
+        File account = File.createTempFile("account", ".txt");
+        File nickname = File.createTempFile("nickname", ".txt");
+        account.deleteOnExit();
+        nickname.deleteOnExit();
+        Files.write(account.toPath(), Arrays.asList("# comment", "songm"), StandardCharsets.UTF_8);
+        Files.write(nickname.toPath(), Arrays.asList("松美"), StandardCharsets.UTF_8);
+
+        KeywordFilter filter = new KeywordFilter();
+        ReflectionTestUtils.setField(filter, "accountLocation", "file:" + account.getPath());
+        ReflectionTestUtils.setField(filter, "nicknameLocation", "file:" + nickname.getPath());
+        filter.init();
+        Assert.assertEquals(1, filter.getAccountKeywords());
+        Assert.assertEquals("songm", filter.findInAccount("isongm1"));
+        Assert.assertNull(filter.findInAccount("admin1"));
+
+        Files.write(account.toPath(), Arrays.asList("songm", "admin"), StandardCharsets.UTF_8);
+        filter.reload();
+        Assert.assertEquals(2, filter.getAccountKeywords());
+        Assert.assertEquals("admin", filter.findInAccount("admin1"));
+        Assert.assertEquals("松美", filter.findInNickname("松美的"));
+
+        // 加载失败保留旧版本
+        Assert.assertTrue(account.delete());
+        try {
+            filter.reload();
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertEquals("admin", filter.findInAccount("admin1"));
+        }
+        filter.destroy();
+    }
+}
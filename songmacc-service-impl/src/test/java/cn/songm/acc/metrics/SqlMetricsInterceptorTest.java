@@ -0,0 +1,112 @@
+package cn.songm.acc.metrics;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import cn.songm.acc.dao.UserDao;
+import cn.songm.acc.entity.User;
+
+/**
+ * SQL语句监控测试（H2内存数据库）
+ *
+ * 插件加到共享的SqlSessionFactory上，每个测试后重建上下文。
+ *
+ * @author zhangsong
+ *
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:app-acc-h2.xml" })
+@DirtiesContext(classMode = ClassMode.AFTER_EACH_TEST_METHOD)
+public class SqlMetricsInterceptorTest {
+
+    @Autowired
+    private UserDao userDao;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private SqlSessionFactory sqlSessionFactory;
+
+    private SqlMetricsInterceptor metrics;
+
+    @Before
+    public void setUp() {
+        jdbcTemplate.update("delete from acc_user");
+        for (int i = 1; i <= 3; i++) {
+            jdbcTemplate.update("insert into acc_user (user_id, account, nickname, password) values (?, ?, ?, ?)",
+                    i, "account" + i, "nick" + i, "old" + i);
+        }
+        metrics = new SqlMetricsInterceptor();
+        ReflectionTestUtils.setField(metrics, "slow", 0L);
+        ReflectionTestUtils.setField(metrics, "mask", "password,vcode");
+        ReflectionTestUtils.setField(metrics, "interval", 3600L);
+        metrics.init();
+        sqlSessionFactory.getConfiguration().addInterceptor(metrics);
+    }
+
+    @After
+    public void tearDown() {
+        metrics.destroy();
+    }
+
+    @Test
+    public void testRecord() {
+        Assert.assertEquals(3, userDao.queryByIds(Arrays.asList(1L, 2L, 3L)).size());
+        Assert.assertEquals(1, userDao.countByAccount("account1"));
+        Assert.assertEquals(1, userDao.rehashPassword(2L, "old2", "new2"));
+        Assert.assertEquals(0, userDao.rehashPassword(2L, "old2", "new2"));
+
+        Assert.assertEquals(4, metrics.getCallCount());
+        Assert.assertEquals(0, metrics.getErrorCount());
+        Map<String, String> rows = metrics.getRows();
+        Assert.assertEquals("calls=1, rows=3, rowsPerCall=3.0", rows.get("UserDaoImpl.selectByIds"));
+        Assert.assertEquals("calls=2, rows=1, rowsPerCall=0.5", rows.get("UserDaoImpl.rehashPassword"));
+        Assert.assertTrue(metrics.reportTotal().contains("UserDaoImpl.countByColumn"));
+    }
+
+    @Test
+    public void testStreamCountsRowsOnly() {
+        final int[] handled = new int[1];
+        userDao.scanNames(new ResultHandler<User>() {
+            @Override
+            public void handleResult(ResultContext<? extends User> context) {
+                handled[0]++;
+            }
+        });
+        Assert.assertEquals(3, handled[0]);
+        // 行数经包装的Handler计数，耗时不计入分布
+        Assert.assertEquals("calls=1, rows=3, rowsPerCall=3.0", metrics.getRows().get("UserDaoImpl.selectNames"));
+        Assert.assertEquals(1, metrics.getCallCount());
+        Assert.assertEquals(0, metrics.getErrorCount());
+    }
+
+    @Test
+    public void testMaskParams() {
+        Configuration configuration = sqlSessionFactory.getConfiguration();
+        MappedStatement ms = configuration.getMappedStatement("cn.songm.acc.dao.impl.UserDaoImpl.rehashPassword");
+        Map<String, Object> param = new HashMap<String, Object>();
+        param.put("userId", 2L);
+        param.put("oldPassword", "old2");
+        param.put("newPassword", "new2");
+        Assert.assertEquals("[newPassword=***, userId=2, oldPassword=***]",
+                metrics.params(configuration, ms.getBoundSql(param)));
+    }
+}
@@ -0,0 +1,128 @@
+package cn.songm.acc.password;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import cn.songm.common.service.ServiceException;
+import cn.songm.common.utils.CodeUtils;
+
+public class PasswordEncoderTest {
+
+    private PasswordEncoder encoder;
+
+    @Before
+    public void setUp() {
+        encoder = create(1000);
+    }
+
+    @After
+    public void tearDown() {
+        encoder.destroy();
+    }
+
+    private static PasswordEncoder create(int iterations) {
+        return create(iterations, 1, 1);
+    }
+
+    private static PasswordEncoder create(int iterations, int queueSize, int rehashQueue) {
+        PasswordEncoder encoder = new PasswordEncoder();
+        ReflectionTestUtils.setField(encoder, "iterations", iterations);
+        ReflectionTestUtils.setField(encoder, "threads", 1);
+        ReflectionTestUtils.setField(encoder, "queueSize", queueSize);
+        ReflectionTestUtils.setField(encoder, "timeout", 3000L);
+        ReflectionTestUtils.setField(encoder, "rehashQueue", rehashQueue);
+        encoder.init();
+        return encoder;
+    }
+
+    @Test
+    public void testHash() throws ServiceException {
+        String hashed = encoder.hash("123456");
+        Assert.assertTrue(hashed.startsWith(Pbkdf2PasswordHasher.PREFIX + "1000$"));
+        Assert.assertNotEquals(hashed, encoder.hash("123456"));
+        Assert.assertTrue(encoder.matches("123456", hashed));
+        Assert.assertFalse(encoder.matches("1234567", hashed));
+        Assert.assertFalse(encoder.needsRehash(hashed));
+        Assert.assertFalse(encoder.matches("123456", "$unknown$abc"));
+        Assert.assertFalse(encoder.matches("123456", null));
+    }
+
+    @Test
+    public void testLegacyRehash() throws Exception {
+        String md5 = CodeUtils.md5("123456");
+        Assert.assertTrue(encoder.matches("123456", md5));
+        Assert.assertFalse(encoder.matches("654321", md5));
+        Assert.assertTrue(encoder.needsRehash(md5));
+
+        final AtomicReference<String> saved = new AtomicReference<String>();
+        final CountDownLatch done = new CountDownLatch(1);
+        encoder.rehash("123456", hashed -> {
+            saved.set(hashed);
+            done.countDown();
+        });
+        done.await();
+        Assert.assertTrue(encoder.matches("123456", saved.get()));
+
+        // 调大迭代次数后旧的PBKDF2散列也需要升级
+        PasswordEncoder stronger = create(2000);
+        Assert.assertTrue(stronger.needsRehash(saved.get()));
+        Assert.assertTrue(stronger.matches("123456", saved.get()));
+        stronger.destroy();
+    }
+
+    @Test
+    public void testBusy() throws Exception {
+        // 占满一个线程和一个队列位置
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable block = () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        encoder.executor.execute(block);
+        encoder.executor.execute(block);
+        try {
+            encoder.hash("123456");
+            Assert.fail();
+        } catch (ServiceException e) {
+            Assert.assertEquals(1, encoder.getRejectedCount());
+        }
+        // MD5不经过线程池
+        Assert.assertTrue(encoder.matches("123456", CodeUtils.md5("123456")));
+        // 繁忙时放弃升级
+        encoder.rehash("123456", hashed -> Assert.fail());
+        Assert.assertEquals(1, encoder.getRehashSkippedCount());
+        release.countDown();
+    }
+
+    @Test
+    public void testRehashLeavesRoomForLogins() throws Exception {
+        PasswordEncoder encoder = create(1000, 4, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable block = () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        // 线程忙，队列中至少有一个等待的任务，但还没有满
+        encoder.executor.execute(block);
+        encoder.executor.execute(block);
+        encoder.rehash("123456", hashed -> Assert.fail());
+        Assert.assertEquals(1, encoder.getRehashSkippedCount());
+        // 登入仍可排队
+        release.countDown();
+        Assert.assertTrue(encoder.matches("123456", encoder.hash("123456")));
+        Assert.assertEquals(0, encoder.getRejectedCount());
+        encoder.destroy();
+    }
+}
@@ -0,0 +1,72 @@
+package cn.songm.acc.password;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 每核每秒可校验的登入数
+ *
+ * 单线程吞吐量即一个散列线程（一个核）每秒能完成的密码校验次数，
+ * 乘以acc.password.threads得到单节点登入校验的上限，据此选择acc.password.iterations。
+ * 运行：在IDE中执行main，或mvn test-compile后以测试classpath运行本类。
+ *
+ * @author zhangsong
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(1)
+@Fork(1)
+public class PasswordHasherBenchmark {
+
+    @Param({ "1000", "10000", "50000", "100000", "310000" })
+    private int iterations;
+
+    private Pbkdf2PasswordHasher pbkdf2;
+    private Md5PasswordHasher md5;
+    private String pbkdf2Hash;
+    private String md5Hash;
+
+    @Setup
+    public void setUp() {
+        pbkdf2 = new Pbkdf2PasswordHasher(iterations);
+        md5 = new Md5PasswordHasher();
+        pbkdf2Hash = pbkdf2.hash("p@ssw0rd");
+        md5Hash = md5.hash("p@ssw0rd");
+    }
+
+    @Benchmark
+    public boolean pbkdf2Login() {
+        return pbkdf2.matches("p@ssw0rd", pbkdf2Hash);
+    }
+
+    /** 旧的MD5，作为对照，与迭代次数无关 */
+    @Benchmark
+    public boolean md5Login() {
+        return md5.matches("p@ssw0rd", md5Hash);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PasswordHasherBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
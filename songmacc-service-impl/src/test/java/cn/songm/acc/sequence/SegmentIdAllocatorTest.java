@@ -0,0 +1,98 @@
+package cn.songm.acc.sequence;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SegmentIdAllocatorTest {
+
+    /**
+     * 模拟序列表，每次租用都有一定延迟
+     */
+    private static class SequenceTable implements SegmentIdAllocator.SegmentLoader {
+        final AtomicLong value = new AtomicLong();
+        final AtomicInteger leases = new AtomicInteger();
+
+        @Override
+        public long lease(int step) {
+            leases.incrementAndGet();
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return value.addAndGet(step);
+        }
+    }
+
+    @Test
+    public void testNoDuplicates() throws Exception {
+        final int nodes = 3;
+        final int threads = 8;
+        final int perThread = 50000;
+        final int step = 1000;
+
+        SequenceTable table = new SequenceTable();
+        final List<SegmentIdAllocator> allocators = new ArrayList<SegmentIdAllocator>();
+        for (int i = 0; i < nodes; i++) {
+            allocators.add(new SegmentIdAllocator("test", step, 0.2, table));
+        }
+
+        final Set<Long> ids = ConcurrentHashMap.newKeySet();
+        final AtomicInteger duplicates = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int n = 0; n < nodes; n++) {
+            for (int t = 0; t < threads; t++) {
+                final SegmentIdAllocator allocator = allocators.get(n);
+                Thread w = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        for (int i = 0; i < perThread; i++) {
+                            if (!ids.add(allocator.nextId())) {
+                                duplicates.incrementAndGet();
+                            }
+                        }
+                    }
+                });
+                w.start();
+                workers.add(w);
+            }
+        }
+        start.countDown();
+        for (Thread w : workers) {
+            w.join();
+        }
+        for (SegmentIdAllocator allocator : allocators) {
+            allocator.shutdown();
+        }
+
+        int total = nodes * threads * perThread;
+        Assert.assertEquals(0, duplicates.get());
+        Assert.assertEquals(total, ids.size());
+        // 每个节点最多多租用一段（预取）
+        Assert.assertTrue(table.leases.get() <= total / step + nodes * 2);
+    }
+
+    @Test
+    public void testSequentialWithinSegment() {
+        SequenceTable table = new SequenceTable();
+        SegmentIdAllocator allocator = new SegmentIdAllocator("test", 10, 0.5, table);
+        for (long i = 1; i <= 10; i++) {
+            Assert.assertEquals(i, allocator.nextId());
+        }
+        allocator.shutdown();
+    }
+}
@@ -1,5 +1,13 @@
 package cn.songm.acc.service;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -21,7 +29,8 @@ public class UserServiceTest {
     public void testRegister() {
         User u = null;
         try {
-            u = userService.register("zhangsong", "123456", "张松", "sysVcode", "vcode");
+            userService.putVcode("test-session", "AbCd");
+            u = userService.register("zhangsong", "123456", "张松", "test-session", "abcd");
         } catch (ServiceException e) {
             return;
         }
@@ -32,6 +41,62 @@ public class UserServiceTest {
         Assert.assertEquals(u, userService.getUserById(u.getUserId()));
     }
     
+    @Test
+    public void testRegisterSameNickConcurrently() throws Exception {
+        int threads = 32;
+        final String nick = "并发" + (System.currentTimeMillis() % 1000000);
+        final String prefix = "conc" + System.currentTimeMillis() + "x";
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<String>> results = new ArrayList<Future<String>>();
+        for (int i = 0; i < threads; i++) {
+            final int n = i;
+            results.add(pool.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    start.await();
+                    try {
+                        userService.putVcode(prefix + n, "vcode");
+                        userService.register(prefix + n, "123456", nick, prefix + n, "vcode");
+                        return "OK";
+                    } catch (ServiceException e) {
+                        return e.getErrCode();
+                    }
+                }
+            }));
+        }
+        start.countDown();
+
+        int succeed = 0, duplicate = 0;
+        for (Future<String> f : results) {
+            String r = f.get();
+            if ("OK".equals(r)) succeed++;
+            else if (UserError.ACC_102.getErrCode().equals(r)) duplicate++;
+        }
+        pool.shutdown();
+        Assert.assertEquals(1, succeed);
+        Assert.assertEquals(threads - 1, duplicate);
+    }
+    
+    @Test
+    public void testVcodeUsedOnce() {
+        String target = "vcode" + System.currentTimeMillis();
+        userService.putVcode(target, "abcd");
+        try {
+            userService.checkLogin("nobody_" + target, "123456", target, "abcd");
+            Assert.fail();
+        } catch (ServiceException e) {
+            // 验证码正确，账号不存在
+            Assert.assertEquals(UserError.ACC_109.getErrCode(), e.getErrCode());
+        }
+        try {
+            userService.checkLogin("nobody_" + target, "123456", target, "abcd");
+            Assert.fail();
+        } catch (ServiceException e) {
+            Assert.assertEquals(UserError.ACC_116.getErrCode(), e.getErrCode());
+        }
+    }
+
     @Test
     public void testGetUserById() {
         Long uId = 21L;
@@ -0,0 +1,46 @@
+package cn.songm.acc.throttle;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SlidingWindowTest {
+
+    private static final long W = 60000L;
+
+    @Test
+    public void testLimit() {
+        SlidingWindow w = new SlidingWindow(W);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(w.tryAcquire("a", 10, i));
+        }
+        Assert.assertFalse(w.tryAcquire("a", 10, 10));
+        // 其它键不受影响
+        Assert.assertTrue(w.tryAcquire("b", 10, 10));
+    }
+
+    @Test
+    public void testSliding() {
+        SlidingWindow w = new SlidingWindow(W);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(w.tryAcquire("a", 10, 0));
+        }
+        // 下一个窗口刚开始，上一窗口全部计入
+        Assert.assertFalse(w.tryAcquire("a", 10, W));
+        // 下一个窗口过半，上一窗口按一半计入
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(w.tryAcquire("a", 10, W + W / 2));
+        }
+        Assert.assertFalse(w.tryAcquire("a", 10, W + W / 2));
+        // 两个窗口之后全部清零
+        Assert.assertTrue(w.tryAcquire("a", 10, 4 * W));
+    }
+
+    @Test
+    public void testSweep() {
+        SlidingWindow w = new SlidingWindow(W);
+        w.tryAcquire("a", 10, 0);
+        w.tryAcquire("b", 10, W);
+        Assert.assertEquals(1, w.sweep(2 * W));
+        Assert.assertEquals(1, w.size());
+    }
+}
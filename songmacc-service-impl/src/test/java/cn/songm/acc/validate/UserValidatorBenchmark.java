@@ -0,0 +1,68 @@
+package cn.songm.acc.validate;
+
+import java.time.LocalDate;
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 注册校验基准测试：String.matches加Calendar与UserValidator
+ *
+ * 运行：在IDE中执行main，或mvn test-compile后以测试classpath运行本类。
+ * 加-prof gc可以看到每次校验分配的字节数。
+ *
+ * @author zhangsong
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserValidatorBenchmark {
+
+    private String account = "zhangsong_2017";
+    private String nickname = "张松的昵称";
+    private String password = "p@ssw0rd!";
+    private int year = LocalDate.now().getYear() - 30;
+    private int month = 2;
+    private int day = 28;
+
+    /** 原来的校验方式 */
+    @Benchmark
+    public boolean regexAndCalendar() {
+        boolean ok = account.matches("^\\w{5,50}$")
+                && nickname.matches("^.{1,12}$")
+                && password.matches("^.{6,20}$");
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(year, month - 1, day);
+        return ok;
+    }
+
+    @Benchmark
+    public boolean validator() {
+        return UserValidator.isAccount(account)
+                && UserValidator.isNickname(nickname)
+                && UserValidator.isPassword(password)
+                && UserValidator.isBirthday(year, month, day);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(UserValidatorBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
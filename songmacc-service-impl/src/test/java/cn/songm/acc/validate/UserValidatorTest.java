@@ -0,0 +1,43 @@
+package cn.songm.acc.validate;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UserValidatorTest {
+
+    /**
+     * 与原来的正则表达式比较，包括换行符和代理对
+     */
+    @Test
+    public void testSameAsRegex() {
+        char[] alphabet = { 'a', 'Z', '0', '_', '-', ' ', '中', '\n', '\r', '\u0085', '\u2028',
+                '\uD83D', '\uDE00' };
+        Random random = new Random(3);
+        for (int i = 0; i < 200000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(56);
+            for (int j = 0; j < length; j++) {
+                sb.append(alphabet[random.nextInt(alphabet.length)]);
+            }
+            String s = sb.toString();
+            Assert.assertEquals(s, s.matches("^\\w{5,50}$"), UserValidator.isAccount(s));
+            Assert.assertEquals(s, s.matches("^.{1,12}$"), UserValidator.isNickname(s));
+            Assert.assertEquals(s, s.matches("^.{6,20}$"), UserValidator.isPassword(s));
+        }
+        Assert.assertFalse(UserValidator.isAccount(null));
+        Assert.assertFalse(UserValidator.isNickname(null));
+        Assert.assertFalse(UserValidator.isPassword(null));
+    }
+
+    @Test
+    public void testBirthday() {
+        Assert.assertTrue(UserValidator.isBirthday(2000, 2, 29));
+        Assert.assertFalse(UserValidator.isBirthday(2001, 2, 29));
+        Assert.assertFalse(UserValidator.isBirthday(1990, 13, 1));
+        Assert.assertFalse(UserValidator.isBirthday(1990, 4, 31));
+        Assert.assertFalse(UserValidator.isBirthday(1990, 0, 1));
+        Assert.assertFalse(UserValidator.isBirthday(9999, 1, 1));
+    }
+}
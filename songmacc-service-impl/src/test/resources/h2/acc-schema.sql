@@ -0,0 +1,50 @@
+-- 与线上 songm_account 库结构保持一致，仅用于测试
+CREATE TABLE acc_user (
+  no VARCHAR(32),
+  version INT DEFAULT 0,
+  created TIMESTAMP,
+  updated TIMESTAMP,
+  remark VARCHAR(255),
+  user_id BIGINT NOT NULL PRIMARY KEY,
+  account VARCHAR(50),
+  password VARCHAR(128),
+  nickname VARCHAR(50),
+  real_name VARCHAR(50),
+  avatar_server VARCHAR(255),
+  avatar_path VARCHAR(255),
+  avatar VARCHAR(255),
+  gender INT,
+  birth_year INT,
+  birth_month INT,
+  birth_day INT,
+  summary VARCHAR(255)
+);
+CREATE UNIQUE INDEX uk_acc_user_account ON acc_user (account);
+CREATE UNIQUE INDEX uk_acc_user_nickname ON acc_user (nickname);
+
+CREATE TABLE acc_user_login (
+  no VARCHAR(32) NOT NULL PRIMARY KEY,
+  version INT DEFAULT 0,
+  created TIMESTAMP,
+  updated TIMESTAMP,
+  remark VARCHAR(255),
+  account VARCHAR(50),
+  user_id BIGINT,
+  ltime TIMESTAMP,
+  lflag BOOLEAN
+);
+
+CREATE TABLE acc_user_login_stat (
+  bucket_time TIMESTAMP NOT NULL,
+  account VARCHAR(50) NOT NULL,
+  user_id BIGINT,
+  success_count BIGINT DEFAULT 0 NOT NULL,
+  failure_count BIGINT DEFAULT 0 NOT NULL,
+  PRIMARY KEY (bucket_time, account)
+);
+CREATE INDEX idx_acc_login_stat_account ON acc_user_login_stat (account, bucket_time);
+CREATE INDEX idx_acc_login_stat_user ON acc_user_login_stat (user_id, bucket_time);
+CREATE INDEX idx_acc_user_login_created ON acc_user_login (created);
+CREATE INDEX idx_acc_user_login_account ON acc_user_login (account, created);
+CREATE INDEX idx_acc_user_created ON acc_user (created, user_id);
+CREATE INDEX idx_acc_user_updated ON acc_user (updated, user_id);
@@ -0,0 +1,50 @@
+package cn.songm.acc.entity;
+
+import java.util.List;
+
+/**
+ * 游标分页结果
+ * 
+ * 取下一页时传入nextCursor；nextCursor为空表示没有更多数据。
+ * 
+ * @author zhangsong
+ *
+ */
+public class SeekPage<T> implements java.io.Serializable {
+
+    private static final long serialVersionUID = -3527146912284076375L;
+
+    /** 本页数据 */
+    private List<T> list;
+
+    /** 下一页游标 */
+    private String nextCursor;
+
+    public SeekPage() {
+    }
+
+    public SeekPage(List<T> list, String nextCursor) {
+        this.list = list;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getList() {
+        return list;
+    }
+
+    public void setList(List<T> list) {
+        this.list = list;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,69 @@
+package cn.songm.acc.entity;
+
+import java.util.Date;
+
+/**
+ * 登入统计（按时间段汇总）
+ * 
+ * @author zhangsong
+ *
+ */
+public class UserLoginStat implements java.io.Serializable {
+
+    private static final long serialVersionUID = 4812350918841126213L;
+
+    /** 时间段开始时间 */
+    private Date bucketTime;
+
+    /** Account */
+    private String account;
+
+    /** 用户ID，账号不存在时为空 */
+    private Long userId;
+
+    /** 登入成功次数 */
+    private Long successCount;
+
+    /** 登入失败次数 */
+    private Long failureCount;
+
+    public Date getBucketTime() {
+        return bucketTime;
+    }
+
+    public void setBucketTime(Date bucketTime) {
+        this.bucketTime = bucketTime;
+    }
+
+    public String getAccount() {
+        return account;
+    }
+
+    public void setAccount(String account) {
+        this.account = account;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public Long getSuccessCount() {
+        return successCount;
+    }
+
+    public void setSuccessCount(Long successCount) {
+        this.successCount = successCount;
+    }
+
+    public Long getFailureCount() {
+        return failureCount;
+    }
+
+    public void setFailureCount(Long failureCount) {
+        this.failureCount = failureCount;
+    }
+}
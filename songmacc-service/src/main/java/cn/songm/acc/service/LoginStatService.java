@@ -0,0 +1,54 @@
+package cn.songm.acc.service;
+
+import java.util.Date;
+import java.util.List;
+
+import cn.songm.acc.entity.UserLoginStat;
+
+/**
+ * 登入统计查询
+ * 
+ * 数据来自按时间段汇总的登入计数，不扫描登入日志。各节点定时写入汇总，最近一个写入间隔内的登入可能尚未计入。
+ * 
+ * @author zhangsong
+ *
+ */
+public interface LoginStatService {
+
+	/**
+	 * 账号在时间范围内的登入次数合计
+	 * @param account
+	 * @param begin 包含
+	 * @param end 不包含
+	 * @return
+	 */
+	public UserLoginStat getAccountStat(String account, Date begin, Date end);
+
+	/**
+	 * 用户在时间范围内的登入次数合计
+	 * @param userId
+	 * @param begin 包含
+	 * @param end 不包含
+	 * @return
+	 */
+	public UserLoginStat getUserStat(long userId, Date begin, Date end);
+
+	/**
+	 * 账号在时间范围内每个时间段的登入次数
+	 * @param account
+	 * @param begin 包含
+	 * @param end 不包含
+	 * @return 按时间段升序
+	 */
+	public List<UserLoginStat> getAccountTrend(String account, Date begin, Date end);
+
+	/**
+	 * 时间范围内登入失败次数最多的账号
+	 * @param begin 包含
+	 * @param end 不包含
+	 * @param limit 最多返回条数
+	 * @return 按失败次数降序
+	 */
+	public List<UserLoginStat> getTopFailures(Date begin, Date end, int limit);
+
+}
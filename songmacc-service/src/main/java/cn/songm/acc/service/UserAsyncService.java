@@ -0,0 +1,50 @@
+package cn.songm.acc.service;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import cn.songm.acc.entity.User;
+
+/**
+ * 用户业务逻辑（异步）
+ *
+ * 与{@link UserService}一一对应，调用不阻塞当前线程。
+ * 业务异常以{@link cn.songm.common.service.ServiceException}异常完成。
+ *
+ * @author zhangsong
+ *
+ */
+public interface UserAsyncService {
+
+	public CompletableFuture<User> register(String account, String password, String nickname, String target,
+			String vcode);
+
+	public CompletableFuture<User> checkLogin(String account, String password, String target, String vcode);
+
+	public CompletableFuture<User> getUserById(Long userId);
+
+	public CompletableFuture<Map<Long, User>> getUsersByIds(Collection<Long> userIds);
+
+	public CompletableFuture<User> getUserPrivacyById(long userId);
+
+	public CompletableFuture<Void> editUserBasic(long userId, String nickname, String realName, Integer gender,
+			Integer birthYear, Integer birthMonth, Integer birthDay, String summary);
+
+	public CompletableFuture<Void> editUserAccount(long userId, String account, String password);
+
+	public CompletableFuture<Void> editUserPhoto(long userId, String avatarServer, String avatarPath);
+
+	public CompletableFuture<Void> editUserPassword(long userId, String oldPsw, String newPsw);
+
+	public CompletableFuture<Void> editNickname(long userId, String nickname);
+
+	public CompletableFuture<Void> editRealName(long userId, String realName);
+
+	public CompletableFuture<Void> editUserGender(long userId, Integer gender);
+
+	public CompletableFuture<Void> editUserBirthday(long userId, int birthYear, int birthMonth, int birthDay);
+
+	public CompletableFuture<Void> editSummary(long userId, String summary);
+
+}
@@ -56,7 +56,13 @@ public enum UserError implements ErrorInfo {
     ACC_116("ACC_116"),
 
     /** 账号已经存在 */
-	ACC_AEXIST("ACC_117");
+	ACC_AEXIST("ACC_117"),
+
+    // 系统异常---------------
+    /** 服务繁忙，请稍后重试 */
+    ACC_118("ACC_118"),
+    /** 登入尝试过于频繁 */
+    ACC_119("ACC_119");
 	
     private final String errCode;
     
@@ -1,5 +1,11 @@
 package cn.songm.acc.service;
 
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import cn.songm.acc.entity.SeekPage;
 import cn.songm.acc.entity.User;
 import cn.songm.common.service.ServiceException;
 
@@ -11,18 +17,29 @@ import cn.songm.common.service.ServiceException;
  */
 public interface UserService {
 
+	/** Dubbo调用附加参数：终端用户的IP，用于登入频率限制 */
+	public static final String ATTACHMENT_CLIENT_IP = "acc.clientIp";
+
+	/**
+	 * 保存验证码，供之后的注册、登入校验
+	 * 
+	 * @param target 验证目标，如会话ID
+	 * @param vcode 验证码
+	 */
+	public void putVcode(String target, String vcode);
+
 	/**
 	 * 注册用户信息
 	 * 
 	 * @param account
 	 * @param password
 	 * @param nickname
-	 * @param sysVcode
-	 * @param vcode
+	 * @param target 验证目标，与{@link #putVcode(String, String)}一致
+	 * @param vcode 用户输入的验证码，校验后即失效
 	 * @return
 	 * @throws ServiceException
 	 */
-	public User register(String account, String password, String nickname, String sysVcode, String vcode)
+	public User register(String account, String password, String nickname, String target, String vcode)
 			throws ServiceException;
 
 	/**
@@ -30,10 +47,10 @@ public interface UserService {
 	 * 
 	 * @param account
 	 * @param password
-	 * @param sysVcode
-	 * @param vcode
+	 * @param target 验证目标，与{@link #putVcode(String, String)}一致
+	 * @param vcode 用户输入的验证码，校验后即失效
 	 */
-	public User checkLogin(String account, String password, String sysVcode, String vcode) throws ServiceException;
+	public User checkLogin(String account, String password, String target, String vcode) throws ServiceException;
 
 	/**
 	 * 验证账号是否重复
@@ -59,6 +76,36 @@ public interface UserService {
 	 */
 	public User getUserById(Long userId);
 
+	/**
+	 * 根据主键批量获取
+	 * 
+	 * @param userIds
+	 * @return 以用户ID为键，不存在的用户不包含在内
+	 */
+	public Map<Long, User> getUsersByIds(Collection<Long> userIds);
+
+	/**
+	 * 按注册时间倒序分页获取用户
+	 * 
+	 * @param cursor 上一页返回的游标，第一页为null
+	 * @param pageSize 每页条数
+	 * @return
+	 */
+	public SeekPage<User> getUserPage(String cursor, int pageSize);
+
+	/**
+	 * 增量同步：获取(updated, userId)水位之后变更的用户
+	 * 
+	 * 结果按(updated, userId)升序，下次调用传入最后一条的updated和userId。
+	 * 最近几秒内的变更暂不返回，等待并发事务提交，避免水位越过未提交的变更。
+	 * 
+	 * @param updated 上次最后一条的更新时间，首次为null
+	 * @param userId 上次最后一条的用户ID，首次为null
+	 * @param limit 每批条数
+	 * @return
+	 */
+	public List<User> getChangedUsers(Date updated, Long userId, int limit);
+
 	/**
 	 * 根据ID获取用户隐私
 	 * 
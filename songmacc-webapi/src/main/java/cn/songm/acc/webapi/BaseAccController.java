@@ -1,9 +1,21 @@
 package cn.songm.acc.webapi;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+
 import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.beans.factory.annotation.Value;
 
 import cn.songm.acc.entity.User;
+import cn.songm.acc.service.UserAsyncService;
 import cn.songm.acc.service.UserService;
+import cn.songm.acc.webapi.async.SSOAsyncService;
+import cn.songm.common.beans.Result;
+import cn.songm.common.service.ServiceException;
 import cn.songm.common.web.BaseController;
 import cn.songm.common.web.Browser;
 import cn.songm.sso.service.SSOService;
@@ -14,18 +26,65 @@ public class BaseAccController extends BaseController {
     protected SSOService ssoService;
     @Resource(name = "userService")
     protected UserService userService;
+    @Resource(name = "userAsyncService")
+    protected UserAsyncService userAsyncService;
+    @Resource(name = "ssoAsyncService")
+    protected SSOAsyncService ssoAsyncService;
+
+    /** 可信的反向代理地址，只有来自这些地址的请求才读取X-Forwarded-For */
+    private Set<String> trustedProxies;
+
+    @Value("${acc.proxy.trusted:127.0.0.1}")
+    public void setTrustedProxies(String trustedProxies) {
+        Set<String> set = new HashSet<String>(Arrays.asList(trustedProxies.trim().split("\\s*,\\s*")));
+        set.remove("");
+        this.trustedProxies = set;
+    }
     
     protected String getSessionId() {
     	return Browser.getSessionId(getRequest());
     }
     
     protected User getSessionUser() {
-        String sesId = Browser.getSessionId(getRequest());
-        return (User) ssoService.getUser(sesId);
+        return SessionContext.get(getRequest(), ssoService).getUser();
     }
     
     protected String getSessionUserId() {
-    	String sessionId = Browser.getSessionId(getRequest());
-        return ssoService.getUserId(sessionId); 
+        return SessionContext.get(getRequest(), ssoService).getUserId();
+    }
+
+    /**
+     * 终端用户IP
+     *
+     * 请求来自可信的反向代理时取X-Forwarded-For的最后一项，即代理看到的地址，
+     * 客户端自己填写的前几项不可信；直接访问的请求忽略该消息头，取连接的地址。
+     * @param request
+     * @return
+     */
+    protected String getClientIp(HttpServletRequest request) {
+        String forwarded = request.getHeader("X-Forwarded-For");
+        if (forwarded != null && trustedProxies.contains(request.getRemoteAddr())) {
+            String ip = forwarded.substring(forwarded.lastIndexOf(',') + 1).trim();
+            if (!ip.isEmpty()) {
+                return ip;
+            }
+        }
+        return request.getRemoteAddr();
+    }
+
+    /**
+     * 异步调用失败时，业务异常写入结果，其它异常继续抛出
+     * @param result
+     * @param e
+     * @param notice 是否使用面向用户的提示信息
+     */
+    protected static void setError(Result<?> result, Throwable e, boolean notice) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (!(cause instanceof ServiceException)) {
+            throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(cause);
+        }
+        ServiceException se = (ServiceException) cause;
+        result.setErrorCode(se.getErrCode());
+        result.setErrorDesc(notice ? se.getErrNotice() : se.getErrDesc());
     }
 }
@@ -1,29 +1,35 @@
 package cn.songm.acc.webapi;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
+import javax.annotation.Resource;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
-import org.springframework.web.servlet.ModelAndView;
+
+import com.alibaba.dubbo.rpc.RpcContext;
 
 import cn.songm.acc.entity.User;
+import cn.songm.acc.service.UserService;
+import cn.songm.acc.webapi.captcha.Captcha;
+import cn.songm.acc.webapi.captcha.CaptchaPool;
 import cn.songm.common.beans.Result;
-import cn.songm.common.service.ServiceException;
-import cn.songm.common.utils.CodeUtils;
 import cn.songm.common.utils.JsonUtils;
-import cn.songm.common.utils.RandomCode;
 import cn.songm.common.web.Browser;
 
 @Controller
 @RequestMapping("/")
 public class LoginController extends BaseAccController {
 
+    @Resource(name = "captchaPool")
+    private CaptchaPool captchaPool;
+
 	/**
 	 * 用户登入
 	 * @param account
@@ -34,29 +40,26 @@ public class LoginController extends BaseAccController {
 	 */
 	@RequestMapping(value = "login.json")
     @ResponseBody
-    public Result<User> login(String account, String password, String vcode,
+    public CompletableFuture<Result<User>> login(String account, String password, String vcode,
             HttpServletRequest request) {
-        Result<User> result = new Result<User>();
-        
-        String sesId = Browser.getSessionId(request);
-        String sysVcode = (String) ssoService.getAttr(sesId, ITEM_KEY_VCODE);
-        
-        User user = null;
-        try {
-            user = userService.checkLogin(account, password, sysVcode, vcode);
-        } catch (ServiceException e) {
-            result.setErrorCode(e.getErrCode());
-            result.setErrorDesc(e.getErrNotice());
-            return result;
-        } finally {
-        	ssoService.delAttr(sesId, ITEM_KEY_VCODE);
-		}
+        final String sesId = Browser.getSessionId(request);
 
-        // 登入成功
-        ssoService.login(sesId, user.getUserId().toString(),
-                JsonUtils.getInstance().toJson(user));
-        result.setData(user);
-        return result; 
+        // 附加参数随紧接着的这次调用发出，用于服务端按IP限流
+        RpcContext.getContext().setAttachment(UserService.ATTACHMENT_CLIENT_IP, getClientIp(request));
+        // 验证码由服务端校验并作废，不再单独读取和删除
+        // 登入成功后写入SSO会话
+        return userAsyncService.checkLogin(account, password, sesId, vcode)
+                .thenCompose(user -> ssoAsyncService.login(sesId, user.getUserId().toString(),
+                        JsonUtils.getInstance().toJson(user)).thenApply(v -> user))
+                .handle((user, e) -> {
+                    Result<User> result = new Result<User>();
+                    if (e != null) {
+                        setError(result, e, true);
+                        return result;
+                    }
+                    result.setData(user);
+                    return result;
+                });
     }
 	
 	/**
@@ -70,7 +73,7 @@ public class LoginController extends BaseAccController {
 	 */
 	@RequestMapping(value = "register.json")
     @ResponseBody
-    public Result<Object> register(
+    public CompletableFuture<Result<Object>> register(
     		@RequestParam(name = "account")
     		String account,
     		@RequestParam(name = "password")
@@ -79,22 +82,15 @@ public class LoginController extends BaseAccController {
             String nick,
             @RequestParam(name = "vcode")
             String vcode, HttpServletRequest request) {
-        Result<Object> result = new Result<Object>();
-        
-        String sesId = Browser.getSessionId(request);
-        String sysVcode = (String) ssoService.getAttr(sesId, ITEM_KEY_VCODE);
+        final String sesId = Browser.getSessionId(request);
 
-        try {
-            userService.register(account, password, nick, sysVcode, vcode);
-        } catch (ServiceException e) {
-            result.setErrorCode(e.getErrCode());
-            result.setErrorDesc(e.getErrNotice());
+        return userAsyncService.register(account, password, nick, sesId, vcode).handle((user, e) -> {
+            Result<Object> result = new Result<Object>();
+            if (e != null) {
+                setError(result, e, true);
+            }
             return result;
-        } finally {
-        	ssoService.delAttr(sesId, ITEM_KEY_VCODE);
-		}
-
-        return result;
+        });
     }
 	
 	/**
@@ -112,30 +108,30 @@ public class LoginController extends BaseAccController {
         return result;
     }
 	/**
-	 * 验证码图片
+	 * 验证码图片，从预先生成的图片池中取出
 	 * @param request
-	 * @return
+	 * @param response
+	 * @throws IOException
 	 */
 	@RequestMapping(value = "vcode", method = RequestMethod.GET)
-    public ModelAndView validateCode(HttpServletRequest request) {
-        RandomCode rcode = new RandomCode();
-        ssoService.setAttr(Browser.getSessionId(request), ITEM_KEY_VCODE, rcode.getCode());
-        
-        ModelAndView mv = new ModelAndView("/vcode");
-        return mv.addObject("rcode", rcode);
+    public void validateCode(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Captcha captcha = captchaPool.take();
+        userService.putVcode(Browser.getSessionId(request), captcha.getCode());
+
+        response.setHeader("Pragma", "No-cache");
+        response.setHeader("Cache-Control", "no-cache");
+        response.setDateHeader("Expires", -10);
+        response.setContentType("image/jpeg");
+        response.setContentLength(captcha.getImage().length);
+        response.getOutputStream().write(captcha.getImage());
     }
 	
 	@RequestMapping(value = "vcode/base64", method = RequestMethod.GET)
 	@ResponseBody
 	public String validateCodeBase64(HttpServletRequest request) throws IOException {
-        RandomCode rcode = new RandomCode();
-        ssoService.setAttr(Browser.getSessionId(request), ITEM_KEY_VCODE, rcode.getCode());
-        
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
-        rcode.getRandcode(os);
-        
-        return CodeUtils.encode64(os.toByteArray());
+        Captcha captcha = captchaPool.take();
+        userService.putVcode(Browser.getSessionId(request), captcha.getCode());
+
+        return captcha.getBase64();
     }
-	
-	public static final String ITEM_KEY_VCODE = "item_key_vcode";
 }
@@ -0,0 +1,31 @@
+package cn.songm.acc.webapi;
+
+import java.io.IOException;
+
+import javax.annotation.Resource;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+import cn.songm.acc.webapi.metrics.WebMetrics;
+
+@Controller
+public class MetricsController {
+
+    @Resource(name = "webMetrics")
+    private WebMetrics webMetrics;
+
+    /**
+     * Prometheus采集接口，不经过会话拦截器
+     * @param response
+     * @throws IOException
+     */
+    @RequestMapping(value = "/metrics", method = RequestMethod.GET)
+    public void metrics(HttpServletResponse response) throws IOException {
+        response.setContentType("text/plain; version=0.0.4; charset=UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        webMetrics.writePrometheus(response.getWriter());
+    }
+}
@@ -0,0 +1,113 @@
+package cn.songm.acc.webapi;
+
+import javax.servlet.http.HttpServletRequest;
+
+import cn.songm.acc.entity.User;
+import cn.songm.common.web.Browser;
+import cn.songm.sso.entity.Session;
+import cn.songm.sso.service.SSOService;
+
+/**
+ * 请求范围的会话信息
+ *
+ * 同一个请求内，会话上报和会话用户只向SSO查询一次，之后的拦截器和控制器直接复用。
+ * 只在处理请求的线程中使用，不做同步。
+ *
+ * @author zhangsong
+ *
+ */
+public class SessionContext {
+
+    private static final String ATTR_NAME = SessionContext.class.getName();
+
+    private final SSOService ssoService;
+    private final String sesId;
+
+    private Session session;
+    private boolean userLoaded;
+    private User user;
+
+    /** 实际发出的SSO调用次数 */
+    private int rpcCount;
+    /** 复用已有结果而省去的SSO调用次数 */
+    private int savedCount;
+
+    private SessionContext(SSOService ssoService, String sesId) {
+        this.ssoService = ssoService;
+        this.sesId = sesId;
+    }
+
+    /**
+     * 获取当前请求的会话信息，不存在则创建
+     * @param request
+     * @param ssoService
+     * @return
+     */
+    public static SessionContext get(HttpServletRequest request, SSOService ssoService) {
+        SessionContext ctx = find(request);
+        if (ctx == null) {
+            ctx = new SessionContext(ssoService, Browser.getSessionId(request));
+            request.setAttribute(ATTR_NAME, ctx);
+        }
+        return ctx;
+    }
+
+    /**
+     * 获取当前请求的会话信息，不存在返回null
+     * @param request
+     * @return
+     */
+    public static SessionContext find(HttpServletRequest request) {
+        return (SessionContext) request.getAttribute(ATTR_NAME);
+    }
+
+    public String getSesId() {
+        return sesId;
+    }
+
+    /**
+     * 上报会话（会话不存在时由SSO创建）
+     * @return
+     */
+    public Session report() {
+        if (session == null) {
+            session = ssoService.report(sesId);
+            rpcCount++;
+        } else {
+            savedCount++;
+        }
+        return session;
+    }
+
+    /**
+     * 会话中的登入用户，未登入返回null
+     * @return
+     */
+    public User getUser() {
+        if (!userLoaded) {
+            user = (User) ssoService.getUser(sesId);
+            userLoaded = true;
+            rpcCount++;
+        } else {
+            savedCount++;
+        }
+        return user;
+    }
+
+    /**
+     * 会话中的登入用户ID，未登入返回null
+     * @return
+     */
+    public String getUserId() {
+        User u = getUser();
+        return u == null ? null : u.getUserId().toString();
+    }
+
+    public int getRpcCount() {
+        return rpcCount;
+    }
+
+    public int getSavedCount() {
+        return savedCount;
+    }
+}
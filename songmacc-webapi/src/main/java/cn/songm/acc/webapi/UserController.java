@@ -1,5 +1,9 @@
 package cn.songm.acc.webapi;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
 import javax.annotation.Resource;
 
 import org.springframework.stereotype.Controller;
@@ -9,14 +13,14 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 import cn.songm.acc.entity.User;
-import cn.songm.acc.service.UserService;
+import cn.songm.acc.webapi.loader.UserBatchLoader;
 import cn.songm.common.beans.Result;
-import cn.songm.common.service.ServiceException;
-import cn.songm.sso.service.SSOService;
 
 /**
  * 用户控制器
  * 
+ * 涉及用户服务的接口均返回CompletableFuture，等待Dubbo响应期间不占用Servlet线程。
+ * 
  * @author zhangsong
  *
  */
@@ -24,10 +28,11 @@ import cn.songm.sso.service.SSOService;
 @RequestMapping("/")
 public class UserController extends BaseAccController {
 
-    @Resource(name = "ssoService")
-    private SSOService ssoService;
-    @Resource(name = "userService")
-    private UserService userService;
+    /** 批量获取用户信息时最多的ID个数 */
+    private static final int MAX_IDS = 100;
+
+    @Resource(name = "userBatchLoader")
+    private UserBatchLoader userBatchLoader;
 
     /**
      * 获取用户信息
@@ -36,16 +41,42 @@ public class UserController extends BaseAccController {
      */
     @RequestMapping(value = "user.json")
     @ResponseBody
-    public Result<User> getUser(
+    public CompletableFuture<Result<User>> getUser(
     		@RequestParam(name = "user_id")
     		long userId) {
-        User user = userService.getUserById(userId);
-        user.setAccount(null);
-        user.setPassword(null);
-        Result<User> result = new Result<User>();
-        result.setData(user);
-        
-        return result;
+        return userBatchLoader.load(userId).thenApply(user -> {
+            if (user != null) {
+                user.setAccount(null);
+                user.setPassword(null);
+            }
+            Result<User> result = new Result<User>();
+            result.setData(user);
+            return result;
+        });
+    }
+
+    /**
+     * 批量获取用户信息
+     * @param ids 用户ID，逗号分隔
+     * @return
+     */
+    @RequestMapping(value = "users.json")
+    @ResponseBody
+    public CompletableFuture<Result<Map<Long, User>>> getUsers(
+    		@RequestParam(name = "ids")
+    		List<Long> ids) {
+        if (ids.size() > MAX_IDS) {
+            throw new IllegalArgumentException("Too many ids: " + ids.size());
+        }
+        return userAsyncService.getUsersByIds(ids).thenApply(users -> {
+            for (User user : users.values()) {
+                user.setAccount(null);
+                user.setPassword(null);
+            }
+            Result<Map<Long, User>> result = new Result<Map<Long, User>>();
+            result.setData(users);
+            return result;
+        });
     }
 
     /**
@@ -66,7 +97,7 @@ public class UserController extends BaseAccController {
      */
     @RequestMapping(value = "member/user/edit.json", method = RequestMethod.POST)
     @ResponseBody
-    public Result<User> editUser(
+    public CompletableFuture<Result<User>> editUser(
     		@RequestParam(name = "nick")
     		String nick,
     		@RequestParam(name = "real_name", required = false)
@@ -81,70 +112,79 @@ public class UserController extends BaseAccController {
     		Integer birthDay,
     		@RequestParam(name = "summary", required = false)
     		String summary) {
-    	Result<User> result = new Result<User>();
-        long userId = Long.parseLong(this.getSessionUserId());
-        try {
-			userService.editUserBasic(userId, nick, realName, gender, birthYear, birthMonth, birthDay, summary);
-			User u = userService.getUserById(userId);
-			ssoService.editUser(String.valueOf(userId), u);
-			result.setData(u);
-		} catch (ServiceException e) {
-			result.setErrorCode(e.getErrCode());
-			result.setErrorDesc(e.getErrDesc());
-		}
-        return result;
+        final long userId = Long.parseLong(this.getSessionUserId());
+        return userAsyncService
+                .editUserBasic(userId, nick, realName, gender, birthYear, birthMonth, birthDay, summary)
+                .thenCompose(v -> refreshSessionUser(userId))
+                .handle((u, e) -> {
+                    Result<User> result = new Result<User>();
+                    if (e != null) {
+                        setError(result, e, false);
+                    } else {
+                        result.setData(u);
+                    }
+                    return result;
+                });
+    }
+    
+    /**
+     * 修改成功后重新读取用户信息并更新会话
+     * @param userId
+     * @return
+     */
+    private CompletableFuture<User> refreshSessionUser(final long userId) {
+        return userAsyncService.getUserById(userId).thenCompose(
+                u -> ssoAsyncService.editUser(String.valueOf(userId), u).thenApply(v -> u));
     }
     
     @RequestMapping(value = "member/user/avatar.json", method = RequestMethod.POST)
     @ResponseBody
-    public Result<Object> editAvatar(
+    public CompletableFuture<Result<Object>> editAvatar(
     		@RequestParam(name = "avatar_server")
     		String avatarServer,
     		@RequestParam(name = "avatar_path")
     		String avatarPath) {
-    	Result<Object> result = new Result<Object>();
-    	long userId = Long.parseLong(this.getSessionUserId());
-        userService.editUserPhoto(userId, avatarServer, avatarPath);
-        User u = userService.getUserById(userId);
-		ssoService.editUser(String.valueOf(userId), u);
-        return result;
+    	final long userId = Long.parseLong(this.getSessionUserId());
+        return userAsyncService.editUserPhoto(userId, avatarServer, avatarPath)
+                .thenCompose(v -> refreshSessionUser(userId))
+                .thenApply(u -> new Result<Object>());
     }
     
     @RequestMapping(value = "member/user/account.json", method=RequestMethod.PUT)
-    public Result<Object> eidtAccount(
+    @ResponseBody
+    public CompletableFuture<Result<Object>> eidtAccount(
     		@RequestParam(name = "account")
     		String account,
     		@RequestParam(name = "password")
     		String password) {
-    	Result<Object> result = new Result<Object>();
-    	long userId = Long.parseLong(this.getSessionUserId());
-    	try {
-			userService.editUserAccount(userId, account, password);
-			User u = userService.getUserById(userId);
-			ssoService.editUser(String.valueOf(userId), u);
-		} catch (ServiceException e) {
-			result.setErrorCode(e.getErrCode());
-			result.setErrorDesc(e.getErrDesc());
-		}
-    	return result;
+    	final long userId = Long.parseLong(this.getSessionUserId());
+        return userAsyncService.editUserAccount(userId, account, password)
+                .thenCompose(v -> refreshSessionUser(userId))
+                .handle((u, e) -> {
+                    Result<Object> result = new Result<Object>();
+                    if (e != null) {
+                        setError(result, e, false);
+                    }
+                    return result;
+                });
     }
     
     @RequestMapping(value = "member/user/password.json", method=RequestMethod.PUT)
-    public Result<Object> editPassword(
+    @ResponseBody
+    public CompletableFuture<Result<Object>> editPassword(
     		@RequestParam(name = "old_pwd")
     		String oldPwd,
     		@RequestParam(name = "new_pwd")
     		String newPwd) {
-    	Result<Object> result = new Result<Object>();
-    	long userId = Long.parseLong(this.getSessionUserId());
-    	try {
-			userService.editUserPassword(userId, oldPwd, newPwd);
-			User u = userService.getUserById(userId);
-			ssoService.editUser(String.valueOf(userId), u);
-		} catch (ServiceException e) {
-			result.setErrorCode(e.getErrCode());
-			result.setErrorDesc(e.getErrDesc());
-		}
-    	return result;
+    	final long userId = Long.parseLong(this.getSessionUserId());
+        return userAsyncService.editUserPassword(userId, oldPwd, newPwd)
+                .thenCompose(v -> refreshSessionUser(userId))
+                .handle((u, e) -> {
+                    Result<Object> result = new Result<Object>();
+                    if (e != null) {
+                        setError(result, e, false);
+                    }
+                    return result;
+                });
     }
 }
@@ -0,0 +1,141 @@
+package cn.songm.acc.webapi.async;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.alibaba.dubbo.common.URL;
+import com.alibaba.dubbo.remoting.exchange.ResponseCallback;
+import com.alibaba.dubbo.rpc.Result;
+import com.alibaba.dubbo.rpc.RpcContext;
+import com.alibaba.dubbo.rpc.protocol.dubbo.FutureAdapter;
+
+import cn.songm.acc.webapi.metrics.WebMetrics;
+
+/**
+ * Dubbo异步调用转换为CompletableFuture
+ *
+ * 调用的必须是配置了async="true"的引用，调用立即返回，结果在响应到达时完成。
+ * 后续处理在独立的回调线程池中执行，不占用Dubbo的IO线程；后续处理中不能有同步的远程调用，
+ * 需要时同样通过异步引用发出。回调队列有界，满时调用以RejectedExecutionException结束。
+ * 调用耗时从发出到响应到达，记录在webMetrics中。
+ *
+ * @author zhangsong
+ *
+ */
+@Component("dubboAsyncInvoker")
+public class DubboAsyncInvoker {
+
+    /**
+     * 一次异步引用上的调用
+     */
+    public interface Invocation {
+        void invoke() throws Exception;
+    }
+
+    /** 回调线程数 */
+    @Value("${acc.async.callback.threads:16}")
+    private int threads;
+    /** 回调队列容量 */
+    @Value("${acc.async.callback.queue:10000}")
+    private int queueSize;
+
+    @Resource(name = "webMetrics")
+    private WebMetrics webMetrics;
+
+    private ExecutorService callbackExecutor;
+
+    @PostConstruct
+    public void init() {
+        final AtomicInteger n = new AtomicInteger();
+        callbackExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "dubbo-async-callback-" + n.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        callbackExecutor.shutdown();
+    }
+
+    public <T> CompletableFuture<T> call(Invocation invocation) {
+        final CompletableFuture<T> cf = new CompletableFuture<T>();
+        Future<?> future;
+        final String service;
+        final String method;
+        final long start = System.nanoTime();
+        try {
+            invocation.invoke();
+            RpcContext ctx = RpcContext.getContext();
+            future = ctx.getFuture();
+            URL url = ctx.getUrl();
+            service = url == null ? "unknown" : url.getServiceInterface();
+            method = ctx.getMethodName();
+        } catch (Exception e) {
+            cf.completeExceptionally(e);
+            return cf;
+        }
+        if (!(future instanceof FutureAdapter)) {
+            cf.completeExceptionally(new IllegalStateException("Not an async dubbo reference"));
+            return cf;
+        }
+        ((FutureAdapter<?>) future).getFuture().setCallback(new ResponseCallback() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public void done(final Object response) {
+                webMetrics.recordRpc(service, method, System.nanoTime() - start,
+                        ((Result) response).hasException());
+                execute(cf, new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            cf.complete((T) ((Result) response).recreate());
+                        } catch (Throwable e) {
+                            cf.completeExceptionally(e);
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void caught(final Throwable e) {
+                webMetrics.recordRpc(service, method, System.nanoTime() - start, true);
+                execute(cf, new Runnable() {
+                    @Override
+                    public void run() {
+                        cf.completeExceptionally(e);
+                    }
+                });
+            }
+        });
+        return cf;
+    }
+
+    private void execute(CompletableFuture<?> cf, Runnable task) {
+        try {
+            callbackExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // 队列已满，在IO线程上直接以异常结束
+            cf.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package cn.songm.acc.webapi.async;
+
+import java.util.concurrent.CompletableFuture;
+
+import javax.annotation.Resource;
+
+import org.springframework.stereotype.Component;
+
+import cn.songm.acc.entity.User;
+import cn.songm.sso.service.SSOService;
+
+/**
+ * 单点登入服务（异步），基于Dubbo异步引用ssoServiceAsync实现
+ *
+ * 供CompletableFuture的后续处理使用，不在回调线程中同步等待SSO响应。
+ *
+ * @author zhangsong
+ *
+ */
+@Component("ssoAsyncService")
+public class SSOAsyncService {
+
+    @Resource(name = "ssoServiceAsync")
+    private SSOService ssoServiceAsync;
+    @Resource(name = "dubboAsyncInvoker")
+    private DubboAsyncInvoker invoker;
+
+    public CompletableFuture<Object> login(final String sesId, final String userId, final String userInfo) {
+        return invoker.call(() -> ssoServiceAsync.login(sesId, userId, userInfo));
+    }
+
+    public CompletableFuture<Object> editUser(final String userId, final User user) {
+        return invoker.call(() -> ssoServiceAsync.editUser(userId, user));
+    }
+}
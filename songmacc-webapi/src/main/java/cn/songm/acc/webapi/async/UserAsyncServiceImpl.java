@@ -0,0 +1,105 @@
+package cn.songm.acc.webapi.async;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import javax.annotation.Resource;
+
+import org.springframework.stereotype.Component;
+
+import cn.songm.acc.entity.User;
+import cn.songm.acc.service.UserAsyncService;
+import cn.songm.acc.service.UserService;
+
+/**
+ * 用户业务逻辑（异步），基于Dubbo异步引用userServiceAsync实现
+ *
+ * @author zhangsong
+ *
+ */
+@Component("userAsyncService")
+public class UserAsyncServiceImpl implements UserAsyncService {
+
+    @Resource(name = "userServiceAsync")
+    private UserService userServiceAsync;
+    @Resource(name = "dubboAsyncInvoker")
+    private DubboAsyncInvoker invoker;
+
+    @Override
+    public CompletableFuture<User> register(final String account, final String password, final String nickname,
+            final String target, final String vcode) {
+        return invoker.call(() -> userServiceAsync.register(account, password, nickname, target, vcode));
+    }
+
+    @Override
+    public CompletableFuture<User> checkLogin(final String account, final String password, final String target,
+            final String vcode) {
+        return invoker.call(() -> userServiceAsync.checkLogin(account, password, target, vcode));
+    }
+
+    @Override
+    public CompletableFuture<User> getUserById(final Long userId) {
+        return invoker.call(() -> userServiceAsync.getUserById(userId));
+    }
+
+    @Override
+    public CompletableFuture<Map<Long, User>> getUsersByIds(final Collection<Long> userIds) {
+        return invoker.call(() -> userServiceAsync.getUsersByIds(userIds));
+    }
+
+    @Override
+    public CompletableFuture<User> getUserPrivacyById(final long userId) {
+        return invoker.call(() -> userServiceAsync.getUserPrivacyById(userId));
+    }
+
+    @Override
+    public CompletableFuture<Void> editUserBasic(final long userId, final String nickname, final String realName,
+            final Integer gender, final Integer birthYear, final Integer birthMonth, final Integer birthDay,
+            final String summary) {
+        return invoker.call(() -> userServiceAsync.editUserBasic(userId, nickname, realName, gender, birthYear,
+                birthMonth, birthDay, summary));
+    }
+
+    @Override
+    public CompletableFuture<Void> editUserAccount(final long userId, final String account, final String password) {
+        return invoker.call(() -> userServiceAsync.editUserAccount(userId, account, password));
+    }
+
+    @Override
+    public CompletableFuture<Void> editUserPhoto(final long userId, final String avatarServer,
+            final String avatarPath) {
+        return invoker.call(() -> userServiceAsync.editUserPhoto(userId, avatarServer, avatarPath));
+    }
+
+    @Override
+    public CompletableFuture<Void> editUserPassword(final long userId, final String oldPsw, final String newPsw) {
+        return invoker.call(() -> userServiceAsync.editUserPassword(userId, oldPsw, newPsw));
+    }
+
+    @Override
+    public CompletableFuture<Void> editNickname(final long userId, final String nickname) {
+        return invoker.call(() -> userServiceAsync.editNickname(userId, nickname));
+    }
+
+    @Override
+    public CompletableFuture<Void> editRealName(final long userId, final String realName) {
+        return invoker.call(() -> userServiceAsync.editRealName(userId, realName));
+    }
+
+    @Override
+    public CompletableFuture<Void> editUserGender(final long userId, final Integer gender) {
+        return invoker.call(() -> userServiceAsync.editUserGender(userId, gender));
+    }
+
+    @Override
+    public CompletableFuture<Void> editUserBirthday(final long userId, final int birthYear, final int birthMonth,
+            final int birthDay) {
+        return invoker.call(() -> userServiceAsync.editUserBirthday(userId, birthYear, birthMonth, birthDay));
+    }
+
+    @Override
+    public CompletableFuture<Void> editSummary(final long userId, final String summary) {
+        return invoker.call(() -> userServiceAsync.editSummary(userId, summary));
+    }
+}
@@ -0,0 +1,35 @@
+package cn.songm.acc.webapi.captcha;
+
+/**
+ * 预先生成的验证码图片
+ *
+ * 图片和它的Base64编码都在生成时算好，接口直接输出，不再编码。
+ *
+ * @author zhangsong
+ *
+ */
+public final class Captcha {
+
+    private final String code;
+    private final byte[] image;
+    private final String base64;
+
+    Captcha(String code, byte[] image, String base64) {
+        this.code = code;
+        this.image = image;
+        this.base64 = base64;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    /** 图片数据，只读 */
+    public byte[] getImage() {
+        return image;
+    }
+
+    public String getBase64() {
+        return base64;
+    }
+}
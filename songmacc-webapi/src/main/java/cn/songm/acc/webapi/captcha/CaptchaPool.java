@@ -0,0 +1,152 @@
+package cn.songm.acc.webapi.captcha;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import cn.songm.common.utils.CodeUtils;
+import cn.songm.common.utils.RandomCode;
+
+/**
+ * 验证码图片池
+ *
+ * 后台线程按固定速率生成验证码图片放入池中，请求线程只取出并输出，不再绘图和编码。
+ * 每张图片只发出一次。池空时在请求线程中现场生成，并计入池空次数；
+ * 该次数持续增长说明池太小或补充速率跟不上请求。
+ *
+ * @author zhangsong
+ *
+ */
+@Component("captchaPool")
+@ManagedResource(objectName = "cn.songm.acc.webapi:type=Captcha,name=captchaPool")
+public class CaptchaPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CaptchaPool.class);
+
+    /** 补充间隔（毫秒） */
+    private static final long TICK = 100L;
+
+    /** 池中最多的图片数 */
+    @Value("${acc.captcha.pool.size:2000}")
+    private int size;
+    /** 每秒最多生成的图片数 */
+    @Value("${acc.captcha.refill.rate:500}")
+    private int refillRate;
+    /** 生成线程数 */
+    @Value("${acc.captcha.refill.threads:1}")
+    private int threads;
+
+    private BlockingQueue<Captcha> pool;
+    private ScheduledExecutorService refiller;
+
+    private final LongAdder served = new LongAdder();
+    private final LongAdder underflows = new LongAdder();
+    private final LongAdder rendered = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        pool = new ArrayBlockingQueue<Captcha>(size);
+        final AtomicInteger n = new AtomicInteger();
+        refiller = Executors.newScheduledThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "captcha-refill-" + n.incrementAndGet());
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            }
+        });
+        final int perTick = Math.max(1, (int) (refillRate * TICK / 1000L / threads));
+        for (int i = 0; i < threads; i++) {
+            refiller.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    refill(perTick);
+                }
+            }, 0L, TICK, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        refiller.shutdownNow();
+    }
+
+    private void refill(int count) {
+        try {
+            for (int i = 0; i < count && pool.remainingCapacity() > 0; i++) {
+                pool.offer(render());
+            }
+        } catch (IOException | RuntimeException e) {
+            // 抛出异常会取消定时任务
+            LOG.warn("Render captcha failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 取出一张验证码图片，池空时现场生成
+     *
+     * @return
+     * @throws IOException
+     */
+    public Captcha take() throws IOException {
+        Captcha captcha = pool.poll();
+        if (captcha == null) {
+            underflows.increment();
+            captcha = render();
+        }
+        served.increment();
+        return captcha;
+    }
+
+    private Captcha render() throws IOException {
+        RandomCode rcode = new RandomCode();
+        ByteArrayOutputStream os = new ByteArrayOutputStream(4096);
+        rcode.getRandcode(os);
+        byte[] image = os.toByteArray();
+        rendered.increment();
+        return new Captcha(rcode.getCode(), image, CodeUtils.encode64(image));
+    }
+
+    @ManagedAttribute(description = "池中可用的图片数")
+    public int getAvailable() {
+        return pool.size();
+    }
+
+    @ManagedAttribute(description = "池容量")
+    public int getCapacity() {
+        return size;
+    }
+
+    @ManagedAttribute(description = "发出的图片数")
+    public long getServedCount() {
+        return served.sum();
+    }
+
+    @ManagedAttribute(description = "池空时现场生成的次数")
+    public long getUnderflowCount() {
+        return underflows.sum();
+    }
+
+    @ManagedAttribute(description = "生成的图片总数")
+    public long getRenderedCount() {
+        return rendered.sum();
+    }
+}
@@ -26,6 +26,7 @@ public class GlobalExceptionResolver implements HandlerExceptionResolver {
 	public ModelAndView resolveException(HttpServletRequest req, HttpServletResponse res, Object obj,
 			Exception e) {
 		monitor.onApiError(req, e);
+		req.setAttribute(MetricsInterceptor.ERROR_ATTRIBUTE, Boolean.TRUE);
 		Result<Object> result = new Result<Object>();
         result.setSucceed(false);
         result.setErrorCode(GeneralErr.UNKNOW.getErrCode());
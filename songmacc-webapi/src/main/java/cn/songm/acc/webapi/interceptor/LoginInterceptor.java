@@ -3,6 +3,7 @@ package cn.songm.acc.webapi.interceptor;
 import java.io.PrintWriter;
 
 import javax.annotation.Resource;
+import javax.servlet.DispatcherType;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
@@ -11,9 +12,9 @@ import org.springframework.web.servlet.ModelAndView;
 
 import cn.songm.acc.entity.User;
 import cn.songm.acc.service.UserError;
+import cn.songm.acc.webapi.SessionContext;
 import cn.songm.common.beans.Result;
 import cn.songm.common.utils.JsonUtils;
-import cn.songm.common.web.Browser;
 import cn.songm.sso.service.SSOService;
 
 public class LoginInterceptor implements HandlerInterceptor {
@@ -24,7 +25,11 @@ public class LoginInterceptor implements HandlerInterceptor {
     @Override
     public boolean preHandle(HttpServletRequest request,
             HttpServletResponse response, Object handler) throws Exception {
-    	User user = (User) ssoService.getUser(Browser.getSessionId(request));
+        // 异步处理完成后的再次分派，请求开始时已校验过
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            return true;
+        }
+    	User user = SessionContext.get(request, ssoService).getUser();
         if (user != null) {
             return true;
         }
@@ -0,0 +1,64 @@
+package cn.songm.acc.webapi.interceptor;
+
+import javax.annotation.Resource;
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.ModelAndView;
+
+import cn.songm.acc.webapi.metrics.WebMetrics;
+
+/**
+ * 接口耗时统计，须排在其它拦截器之前
+ *
+ * 从请求开始计时，异步请求在结果写出后的再次分派中结束，
+ * 耗时包含其它拦截器和异步等待的时间。
+ *
+ * @author zhangsong
+ *
+ */
+public class MetricsInterceptor implements HandlerInterceptor {
+
+    /** 由异常处理器设置，标记请求以未处理异常结束 */
+    public static final String ERROR_ATTRIBUTE = MetricsInterceptor.class.getName() + ".error";
+
+    private static final String START_ATTRIBUTE = MetricsInterceptor.class.getName() + ".start";
+    /** 未匹配到处理器的请求合并为一个序列，避免按原始URI产生大量序列 */
+    static final String UNMATCHED = "unmatched";
+
+    @Resource(name = "webMetrics")
+    private WebMetrics webMetrics;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request,
+            HttpServletResponse response, Object handler) throws Exception {
+        if (request.getDispatcherType() != DispatcherType.ASYNC) {
+            request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+        }
+        return true;
+    }
+
+    @Override
+    public void postHandle(HttpServletRequest request, HttpServletResponse response,
+            Object handler, ModelAndView modelAndView) throws Exception {
+
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response,
+            Object handler, Exception e) throws Exception {
+        Long start = (Long) request.getAttribute(START_ATTRIBUTE);
+        if (start == null) {
+            return;
+        }
+        request.removeAttribute(START_ATTRIBUTE);
+        String endpoint = (String) request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        boolean error = e != null || response.getStatus() >= 500
+                || request.getAttribute(ERROR_ATTRIBUTE) != null;
+        webMetrics.recordRequest(endpoint == null ? UNMATCHED : endpoint, System.nanoTime() - start, error);
+    }
+
+}
@@ -1,15 +1,17 @@
 package cn.songm.acc.webapi.interceptor;
 
 import javax.annotation.Resource;
+import javax.servlet.DispatcherType;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
 import org.springframework.web.servlet.ModelAndView;
 
-import cn.songm.acc.entity.User;
+import cn.songm.acc.webapi.SessionContext;
 import cn.songm.common.web.Browser;
 import cn.songm.common.web.CookieUtils;
 import cn.songm.monitor.api.Monitor;
@@ -24,16 +26,21 @@ public class MustInterceptor implements HandlerInterceptor {
     private SSOService ssoService;
     @Resource(name = "monitor")
     private Monitor monitor;
+    @Resource(name = "sessionRpcStats")
+    private SessionRpcStats sessionRpcStats;
 
     @Override
     public boolean preHandle(HttpServletRequest request,
             HttpServletResponse response, Object handler) throws Exception {
+        // 异步处理完成后的再次分派，请求开始时已处理过
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            return true;
+        }
         LOG.info("URI: {}", request.getRequestURI());
-        String sid = Browser.getSessionId(request);
-        Session session = ssoService.report(sid);
-        User user = (User) ssoService.getUser(sid);
-        String userId = null;
-        if (user != null) userId = user.getUserId().toString();
+        SessionContext ctx = SessionContext.get(request, ssoService);
+        String sid = ctx.getSesId();
+        Session session = ctx.report();
+        String userId = ctx.getUserId();
         // 写入Cookie
         CookieUtils.addCookie(response, Browser.COOKIE_SESSIONID_KEY, session.getSesId(), 0);
         // 写入消息头
@@ -53,6 +60,13 @@ public class MustInterceptor implements HandlerInterceptor {
     public void afterCompletion(HttpServletRequest request, HttpServletResponse response,
             Object handler, Exception e) throws Exception {
     	monitor.onResponse(request, response);
+        SessionContext ctx = SessionContext.find(request);
+        if (ctx != null) {
+            String endpoint = (String) request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            // 未匹配的请求不按原始URI记录，随机路径会产生无限多的条目
+            sessionRpcStats.record(endpoint == null ? MetricsInterceptor.UNMATCHED : endpoint,
+                    ctx.getRpcCount(), ctx.getSavedCount());
+        }
     }
 
 }
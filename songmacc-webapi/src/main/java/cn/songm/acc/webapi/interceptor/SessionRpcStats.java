@@ -0,0 +1,77 @@
+package cn.songm.acc.webapi.interceptor;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * 各接口的SSO会话调用统计
+ *
+ * 记录每个接口实际发出的SSO调用次数和复用请求内会话信息省去的次数。
+ *
+ * @author zhangsong
+ *
+ */
+@Component("sessionRpcStats")
+@ManagedResource(objectName = "cn.songm.acc.webapi:type=Stats,name=sessionRpcStats")
+public class SessionRpcStats {
+
+    private final ConcurrentMap<String, Counter> endpoints = new ConcurrentHashMap<String, Counter>();
+
+    private static class Counter {
+        final LongAdder requests = new LongAdder();
+        final LongAdder rpcs = new LongAdder();
+        final LongAdder saved = new LongAdder();
+    }
+
+    public void record(String endpoint, int rpcs, int saved) {
+        Counter c = endpoints.get(endpoint);
+        if (c == null) {
+            Counter n = new Counter();
+            c = endpoints.putIfAbsent(endpoint, n);
+            if (c == null) {
+                c = n;
+            }
+        }
+        c.requests.increment();
+        c.rpcs.add(rpcs);
+        c.saved.add(saved);
+    }
+
+    @ManagedAttribute(description = "SSO调用总次数")
+    public long getRpcCount() {
+        long sum = 0;
+        for (Counter c : endpoints.values()) {
+            sum += c.rpcs.sum();
+        }
+        return sum;
+    }
+
+    @ManagedAttribute(description = "省去的SSO调用总次数")
+    public long getSavedCount() {
+        long sum = 0;
+        for (Counter c : endpoints.values()) {
+            sum += c.saved.sum();
+        }
+        return sum;
+    }
+
+    @ManagedAttribute(description = "各接口的请求数、SSO调用次数、省去的调用次数")
+    public Map<String, String> getEndpoints() {
+        Map<String, String> result = new TreeMap<String, String>();
+        for (Map.Entry<String, Counter> e : endpoints.entrySet()) {
+            Counter c = e.getValue();
+            long requests = c.requests.sum();
+            long saved = c.saved.sum();
+            result.put(e.getKey(), String.format("requests=%d, rpcs=%d, saved=%d, savedPerRequest=%.2f",
+                    requests, c.rpcs.sum(), saved, requests == 0 ? 0D : (double) saved / requests));
+        }
+        return result;
+    }
+}
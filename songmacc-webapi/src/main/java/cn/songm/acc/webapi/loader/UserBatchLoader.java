@@ -0,0 +1,235 @@
+package cn.songm.acc.webapi.loader;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import cn.songm.acc.entity.User;
+import cn.songm.acc.service.UserAsyncService;
+
+/**
+ * 用户信息批量加载
+ *
+ * 在一个很短的时间窗口内（或达到批量上限时）把并发的单个用户查询合并成一次getUsersByIds调用，
+ * 每个调用方得到自己的结果。同一批次内相同ID的调用方共享同一个User对象，只读使用。
+ * 批量调用通过异步引用发出，不占用线程等待响应；调用失败时同一批次的调用方都以该异常结束。
+ *
+ * @author zhangsong
+ *
+ */
+@Component("userBatchLoader")
+@ManagedResource(objectName = "cn.songm.acc.webapi:type=Loader,name=userBatchLoader")
+public class UserBatchLoader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UserBatchLoader.class);
+
+    @Resource(name = "userAsyncService")
+    private UserAsyncService userAsyncService;
+
+    /** 合并窗口（毫秒） */
+    @Value("${acc.loader.user.window:2}")
+    private long window;
+    /** 每批最多的ID个数 */
+    @Value("${acc.loader.user.maxBatch:100}")
+    private int maxBatch;
+    /** 调用方等待结果的超时时长（毫秒） */
+    @Value("${acc.loader.user.timeout:3000}")
+    private long timeout;
+
+    private final Object lock = new Object();
+    private Batch batch = new Batch();
+
+    private ScheduledExecutorService timer;
+
+    private final LongAdder batchCount = new LongAdder();
+    private final LongAdder loadCount = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicInteger maxBatchSize = new AtomicInteger();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "user-loader-timer");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * 异步加载用户信息，用户不存在时结果为null
+     *
+     * @param userId
+     * @return
+     */
+    public CompletableFuture<User> load(Long userId) {
+        CompletableFuture<User> future;
+        Batch full = null;
+        synchronized (lock) {
+            future = batch.futures.get(userId);
+            if (future != null) {
+                return future;
+            }
+            future = new CompletableFuture<User>();
+            batch.futures.put(userId, future);
+            if (batch.futures.size() == 1) {
+                batch.created = System.nanoTime();
+                final Batch current = batch;
+                timer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        flush(current);
+                    }
+                }, window, TimeUnit.MILLISECONDS);
+            }
+            if (batch.futures.size() >= maxBatch) {
+                full = batch;
+                batch = new Batch();
+            }
+        }
+        if (full != null) {
+            execute(full);
+        }
+        return future;
+    }
+
+    /**
+     * 同步加载用户信息
+     *
+     * @param userId
+     * @return
+     */
+    public User get(Long userId) {
+        try {
+            return load(userId).get(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Load user " + userId + " timeout", e);
+        }
+    }
+
+    private void flush(Batch expected) {
+        synchronized (lock) {
+            // 已经因达到上限被发出
+            if (batch != expected) {
+                return;
+            }
+            batch = new Batch();
+        }
+        execute(expected);
+    }
+
+    private void execute(final Batch full) {
+        int size = full.futures.size();
+        long wait = System.nanoTime() - full.created;
+        batchCount.increment();
+        loadCount.add(size);
+        waitNanos.add(wait);
+        maxBatchSize.accumulateAndGet(size, Math::max);
+        maxWaitNanos.accumulateAndGet(wait, Math::max);
+
+        List<Long> ids = new ArrayList<Long>(full.futures.keySet());
+        try {
+            userAsyncService.getUsersByIds(ids).whenComplete((users, e) -> {
+                if (e != null) {
+                    fail(full, e);
+                    return;
+                }
+                try {
+                    for (Map.Entry<Long, CompletableFuture<User>> entry : full.futures.entrySet()) {
+                        entry.getValue().complete(users.get(entry.getKey()));
+                    }
+                } catch (Throwable t) {
+                    fail(full, t);
+                }
+            });
+        } catch (Throwable e) {
+            fail(full, e);
+        }
+    }
+
+    /**
+     * 批次中尚未完成的调用方都以该异常结束，包括Error，不能让调用方一直等到超时
+     */
+    private static void fail(Batch full, Throwable e) {
+        LOG.warn("Load {} users failed: {}", full.futures.size(), e.toString());
+        for (CompletableFuture<User> f : full.futures.values()) {
+            f.completeExceptionally(e);
+        }
+    }
+
+    @ManagedAttribute(description = "批量调用次数")
+    public long getBatchCount() {
+        return batchCount.sum();
+    }
+
+    @ManagedAttribute(description = "合并的查询个数")
+    public long getLoadCount() {
+        return loadCount.sum();
+    }
+
+    @ManagedAttribute(description = "平均每批ID个数")
+    public double getAvgBatchSize() {
+        long batches = batchCount.sum();
+        return batches == 0 ? 0D : (double) loadCount.sum() / batches;
+    }
+
+    @ManagedAttribute(description = "最大每批ID个数")
+    public int getMaxBatchSize() {
+        return maxBatchSize.get();
+    }
+
+    @ManagedAttribute(description = "平均等待合并时长（微秒）")
+    public double getAvgWaitMicros() {
+        long batches = batchCount.sum();
+        return batches == 0 ? 0D : waitNanos.sum() / 1000D / batches;
+    }
+
+    @ManagedAttribute(description = "最大等待合并时长（微秒）")
+    public long getMaxWaitMicros() {
+        return maxWaitNanos.get() / 1000;
+    }
+
+    private static class Batch {
+        /** 第一个查询加入的时间 */
+        long created;
+        final Map<Long, CompletableFuture<User>> futures = new LinkedHashMap<Long, CompletableFuture<User>>();
+    }
+}
@@ -0,0 +1,44 @@
+package cn.songm.acc.webapi.metrics;
+
+import com.alibaba.dubbo.rpc.Filter;
+import com.alibaba.dubbo.rpc.Invocation;
+import com.alibaba.dubbo.rpc.Invoker;
+import com.alibaba.dubbo.rpc.Result;
+import com.alibaba.dubbo.rpc.RpcException;
+import com.alibaba.dubbo.rpc.support.RpcUtils;
+
+/**
+ * 消费方同步调用耗时统计
+ *
+ * 异步引用的调用在这里立即返回，由DubboAsyncInvoker在响应到达时记录。
+ * 由Dubbo扩展机制创建，webMetrics按属性名从Spring容器注入。
+ *
+ * @author zhangsong
+ *
+ */
+public class RpcMetricsFilter implements Filter {
+
+    private volatile WebMetrics webMetrics;
+
+    public void setWebMetrics(WebMetrics webMetrics) {
+        this.webMetrics = webMetrics;
+    }
+
+    @Override
+    public Result invoke(Invoker<?> invoker, Invocation invocation) throws RpcException {
+        WebMetrics metrics = webMetrics;
+        if (metrics == null || RpcUtils.isAsync(invoker.getUrl(), invocation)) {
+            return invoker.invoke(invocation);
+        }
+        boolean error = true;
+        long start = System.nanoTime();
+        try {
+            Result result = invoker.invoke(invocation);
+            error = result.hasException();
+            return result;
+        } finally {
+            metrics.recordRpc(invoker.getInterface().getName(), invocation.getMethodName(),
+                    System.nanoTime() - start, error);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package cn.songm.acc.webapi.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * 一个序列（接口、远程方法）的次数、错误次数、总耗时和耗时分布
+ *
+ * 耗时以纳秒记录在HdrHistogram的Recorder中，记录无锁、不创建对象。
+ * 分位数取自上一统计周期，次数和总耗时从启动开始累计。
+ *
+ * @author zhangsong
+ *
+ */
+public final class Timer {
+
+    private static final long LOWEST = TimeUnit.MICROSECONDS.toNanos(1);
+    private static final long HIGHEST = TimeUnit.MINUTES.toNanos(1);
+    private static final int DIGITS = 2;
+
+    private final Recorder recorder = new Recorder(LOWEST, HIGHEST, DIGITS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    /** 上一周期的分布 */
+    private volatile Histogram last = new Histogram(LOWEST, HIGHEST, DIGITS);
+
+    /**
+     * @param nanos 耗时（纳秒）
+     * @param error 是否出错
+     */
+    public void record(long nanos, boolean error) {
+        recorder.recordValue(Math.max(LOWEST, Math.min(nanos, HIGHEST)));
+        count.increment();
+        sumNanos.add(nanos);
+        if (error) {
+            errors.increment();
+        }
+    }
+
+    /**
+     * 结束当前统计周期
+     */
+    public void roll() {
+        last = recorder.getIntervalHistogram();
+    }
+
+    /** 上一周期的分布，只读 */
+    public Histogram getLast() {
+        return last;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public long getSumNanos() {
+        return sumNanos.sum();
+    }
+}
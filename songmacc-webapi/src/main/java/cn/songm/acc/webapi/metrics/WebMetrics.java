@@ -0,0 +1,216 @@
+package cn.songm.acc.webapi.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.HdrHistogram.Histogram;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * 接口和远程调用的次数、错误次数与耗时分布
+ *
+ * 接口按匹配到的URL模式记录，远程调用按服务接口和方法记录，
+ * 以Prometheus文本格式输出（summary，分位数取自上一统计周期）。
+ *
+ * @author zhangsong
+ *
+ */
+@Component("webMetrics")
+@ManagedResource(objectName = "cn.songm.acc.webapi:type=Stats,name=webMetrics")
+public class WebMetrics {
+
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    /** 统计周期（秒） */
+    @Value("${acc.metrics.interval:60}")
+    private long interval;
+
+    private final ConcurrentMap<String, Timer> endpoints = new ConcurrentHashMap<String, Timer>();
+    /** 服务接口简单名 -> 方法名 -> 统计 */
+    private final ConcurrentMap<String, ConcurrentMap<String, Timer>> rpcs = new ConcurrentHashMap<String, ConcurrentMap<String, Timer>>();
+    private ScheduledExecutorService roller;
+
+    @PostConstruct
+    public void init() {
+        roller = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "web-metrics");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        roller.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                for (Timer t : endpoints.values()) {
+                    t.roll();
+                }
+                for (ConcurrentMap<String, Timer> methods : rpcs.values()) {
+                    for (Timer t : methods.values()) {
+                        t.roll();
+                    }
+                }
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        roller.shutdownNow();
+    }
+
+    /**
+     * 记录一次接口请求
+     *
+     * @param endpoint 匹配到的URL模式
+     * @param nanos 耗时（纳秒）
+     * @param error 是否以未处理异常或5xx结束
+     */
+    public void recordRequest(String endpoint, long nanos, boolean error) {
+        timer(endpoints, endpoint).record(nanos, error);
+    }
+
+    /**
+     * 记录一次远程调用
+     *
+     * @param service 服务接口名，带不带包名均可
+     * @param method 方法名
+     * @param nanos 耗时（纳秒）
+     * @param error 是否返回异常（含业务异常）
+     */
+    public void recordRpc(String service, String method, long nanos, boolean error) {
+        ConcurrentMap<String, Timer> methods = rpcs.get(service);
+        if (methods == null) {
+            methods = new ConcurrentHashMap<String, Timer>();
+            ConcurrentMap<String, Timer> old = rpcs.putIfAbsent(service, methods);
+            if (old != null) {
+                methods = old;
+            }
+        }
+        timer(methods, method).record(nanos, error);
+    }
+
+    private static Timer timer(ConcurrentMap<String, Timer> map, String key) {
+        Timer t = map.get(key);
+        if (t == null) {
+            Timer n = new Timer();
+            t = map.putIfAbsent(key, n);
+            if (t == null) {
+                t = n;
+            }
+        }
+        return t;
+    }
+
+    /**
+     * 以Prometheus文本格式（0.0.4）输出全部指标
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void writePrometheus(Writer out) throws IOException {
+        StringBuilder sb = new StringBuilder(4096);
+        Map<String, Timer> http = new TreeMap<String, Timer>(endpoints);
+        header(sb, "acc_http_request_duration_seconds", "summary", "接口耗时，分位数取自上一统计周期");
+        for (Map.Entry<String, Timer> e : http.entrySet()) {
+            summary(sb, "acc_http_request_duration_seconds", "endpoint=\"" + escape(e.getKey()) + "\"", e.getValue());
+        }
+        header(sb, "acc_http_request_errors_total", "counter", "以未处理异常或5xx结束的请求数");
+        for (Map.Entry<String, Timer> e : http.entrySet()) {
+            sample(sb, "acc_http_request_errors_total", "endpoint=\"" + escape(e.getKey()) + "\"",
+                    e.getValue().getErrors());
+        }
+
+        Map<String, Timer> rpc = new TreeMap<String, Timer>();
+        for (Map.Entry<String, ConcurrentMap<String, Timer>> s : rpcs.entrySet()) {
+            String service = simpleName(s.getKey());
+            for (Map.Entry<String, Timer> m : s.getValue().entrySet()) {
+                rpc.put("service=\"" + escape(service) + "\",method=\"" + escape(m.getKey()) + "\"", m.getValue());
+            }
+        }
+        header(sb, "acc_rpc_duration_seconds", "summary", "远程调用耗时，分位数取自上一统计周期");
+        for (Map.Entry<String, Timer> e : rpc.entrySet()) {
+            summary(sb, "acc_rpc_duration_seconds", e.getKey(), e.getValue());
+        }
+        header(sb, "acc_rpc_errors_total", "counter", "返回异常的远程调用数");
+        for (Map.Entry<String, Timer> e : rpc.entrySet()) {
+            sample(sb, "acc_rpc_errors_total", e.getKey(), e.getValue().getErrors());
+        }
+        out.write(sb.toString());
+    }
+
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void summary(StringBuilder sb, String name, String labels, Timer t) {
+        Histogram h = t.getLast();
+        for (double q : QUANTILES) {
+            sb.append(name).append('{').append(labels).append(",quantile=\"").append(q).append("\"} ")
+                    .append(seconds(h.getTotalCount() == 0 ? 0 : h.getValueAtPercentile(q * 100))).append('\n');
+        }
+        sb.append(name).append("_sum{").append(labels).append("} ").append(seconds(t.getSumNanos())).append('\n');
+        sb.append(name).append("_count{").append(labels).append("} ").append(t.getCount()).append('\n');
+    }
+
+    private static void sample(StringBuilder sb, String name, String labels, long value) {
+        sb.append(name).append('{').append(labels).append("} ").append(value).append('\n');
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9D;
+    }
+
+    private static String simpleName(String service) {
+        return service.substring(service.lastIndexOf('.') + 1);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    @ManagedAttribute(description = "接口请求总次数")
+    public long getRequestCount() {
+        long n = 0;
+        for (Timer t : endpoints.values()) {
+            n += t.getCount();
+        }
+        return n;
+    }
+
+    @ManagedAttribute(description = "接口错误总次数")
+    public long getRequestErrorCount() {
+        long n = 0;
+        for (Timer t : endpoints.values()) {
+            n += t.getErrors();
+        }
+        return n;
+    }
+
+    @ManagedAttribute(description = "远程调用总次数")
+    public long getRpcCount() {
+        long n = 0;
+        for (ConcurrentMap<String, Timer> methods : rpcs.values()) {
+            for (Timer t : methods.values()) {
+                n += t.getCount();
+            }
+        }
+        return n;
+    }
+}
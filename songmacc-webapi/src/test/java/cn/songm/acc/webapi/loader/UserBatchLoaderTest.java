@@ -0,0 +1,247 @@
+package cn.songm.acc.webapi.loader;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import cn.songm.acc.entity.User;
+import cn.songm.acc.service.UserAsyncService;
+
+/**
+ * 用户信息批量加载测试
+ *
+ * userAsyncService用动态代理替代，只实现getUsersByIds，记录每次调用的ID列表，在单独的线程中完成结果。
+ *
+ * @author zhangsong
+ *
+ */
+public class UserBatchLoaderTest {
+
+    /** 每次getUsersByIds调用的ID列表 */
+    private final List<List<Long>> calls = Collections.synchronizedList(new ArrayList<List<Long>>());
+    /** 不为null时getUsersByIds以该异常完成 */
+    private volatile Throwable failure;
+    /** 不为null时getUsersByIds等待其放行 */
+    private volatile CountDownLatch gate;
+
+    private UserBatchLoader loader;
+
+    private UserBatchLoader loader(long window, int maxBatch, long timeout) {
+        UserAsyncService userAsyncService = (UserAsyncService) Proxy.newProxyInstance(
+                UserAsyncService.class.getClassLoader(), new Class<?>[] { UserAsyncService.class },
+                new InvocationHandler() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (!method.getName().equals("getUsersByIds")) {
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                        final List<Long> ids = new ArrayList<Long>((Collection<Long>) args[0]);
+                        calls.add(ids);
+                        final CompletableFuture<Map<Long, User>> result = new CompletableFuture<Map<Long, User>>();
+                        Thread t = new Thread() {
+                            @Override
+                            public void run() {
+                                try {
+                                    result.complete(getUsersByIds(ids));
+                                } catch (Throwable e) {
+                                    result.completeExceptionally(e);
+                                }
+                            }
+                        };
+                        t.setDaemon(true);
+                        t.start();
+                        return result;
+                    }
+                });
+        loader = new UserBatchLoader();
+        ReflectionTestUtils.setField(loader, "userAsyncService", userAsyncService);
+        ReflectionTestUtils.setField(loader, "window", window);
+        ReflectionTestUtils.setField(loader, "maxBatch", maxBatch);
+        ReflectionTestUtils.setField(loader, "timeout", timeout);
+        loader.init();
+        return loader;
+    }
+
+    private Map<Long, User> getUsersByIds(Collection<Long> userIds) throws Throwable {
+        CountDownLatch g = gate;
+        if (g != null) {
+            g.await();
+        }
+        Throwable e = failure;
+        if (e != null) {
+            throw e;
+        }
+        // 奇数ID的用户存在
+        Map<Long, User> users = new HashMap<Long, User>();
+        for (Long id : userIds) {
+            if (id % 2 == 1) {
+                User u = new User();
+                u.setUserId(id);
+                users.put(id, u);
+            }
+        }
+        return users;
+    }
+
+    @After
+    public void tearDown() {
+        CountDownLatch g = gate;
+        if (g != null) {
+            g.countDown();
+        }
+        if (loader != null) {
+            loader.destroy();
+        }
+    }
+
+    @Test
+    public void testMergeWithinWindow() throws Exception {
+        loader(50, 100, 3000);
+        CompletableFuture<User> f1 = loader.load(1L);
+        CompletableFuture<User> f2 = loader.load(2L);
+        CompletableFuture<User> f3 = loader.load(3L);
+        Assert.assertEquals(Long.valueOf(1L), f1.get(1, TimeUnit.SECONDS).getUserId());
+        // 不存在的用户结果为null
+        Assert.assertNull(f2.get(1, TimeUnit.SECONDS));
+        Assert.assertEquals(Long.valueOf(3L), f3.get(1, TimeUnit.SECONDS).getUserId());
+
+        Assert.assertEquals(1, calls.size());
+        Assert.assertEquals(Arrays.asList(1L, 2L, 3L), calls.get(0));
+        Assert.assertEquals(1, loader.getBatchCount());
+        Assert.assertEquals(3, loader.getLoadCount());
+        Assert.assertEquals(3, loader.getMaxBatchSize());
+
+        // 窗口结束后的查询进入新的批次
+        Assert.assertEquals(Long.valueOf(5L), loader.get(5L).getUserId());
+        Assert.assertEquals(2, calls.size());
+        Assert.assertEquals(Arrays.asList(5L), calls.get(1));
+    }
+
+    @Test
+    public void testDeduplicate() throws Exception {
+        loader(50, 100, 3000);
+        CompletableFuture<User> f1 = loader.load(1L);
+        CompletableFuture<User> f2 = loader.load(1L);
+        CompletableFuture<User> f3 = loader.load(3L);
+        // 同一批次内相同ID共享同一个结果
+        Assert.assertSame(f1, f2);
+        Assert.assertSame(f1.get(1, TimeUnit.SECONDS), f2.get(1, TimeUnit.SECONDS));
+        f3.get(1, TimeUnit.SECONDS);
+
+        Assert.assertEquals(1, calls.size());
+        Assert.assertEquals(Arrays.asList(1L, 3L), calls.get(0));
+        Assert.assertEquals(2, loader.getLoadCount());
+    }
+
+    @Test
+    public void testFlushAtMaxBatch() throws Exception {
+        // 窗口足够长，只有达到上限才会发出
+        loader(60000, 3, 3000);
+        CompletableFuture<User> f1 = loader.load(1L);
+        CompletableFuture<User> f2 = loader.load(2L);
+        Assert.assertFalse(f1.isDone());
+        CompletableFuture<User> f3 = loader.load(3L);
+        f1.get(1, TimeUnit.SECONDS);
+        f2.get(1, TimeUnit.SECONDS);
+        f3.get(1, TimeUnit.SECONDS);
+        Assert.assertEquals(1, calls.size());
+        Assert.assertEquals(Arrays.asList(1L, 2L, 3L), calls.get(0));
+
+        // 上限之后的查询进入新的批次，等待窗口结束
+        CompletableFuture<User> f4 = loader.load(4L);
+        Thread.sleep(100);
+        Assert.assertFalse(f4.isDone());
+        Assert.assertEquals(1, calls.size());
+        Assert.assertEquals(3, loader.getMaxBatchSize());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        gate = new CountDownLatch(1);
+        loader(1, 100, 100);
+        long start = System.nanoTime();
+        try {
+            loader.get(1L);
+            Assert.fail("timeout expected");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("Load user 1 timeout", e.getMessage());
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assert.assertTrue("elapsed " + elapsed, elapsed >= 100 && elapsed < 2000);
+
+        // 超时不影响批次本身，放行后仍正常完成
+        CompletableFuture<User> f = loader.load(3L);
+        gate.countDown();
+        Assert.assertEquals(Long.valueOf(3L), f.get(1, TimeUnit.SECONDS).getUserId());
+    }
+
+    @Test
+    public void testFailurePropagatesToAllCallers() throws Exception {
+        failure = new IllegalArgumentException("service down");
+        loader(50, 100, 3000);
+        List<CompletableFuture<User>> futures = new ArrayList<CompletableFuture<User>>();
+        for (long id = 1; id <= 5; id++) {
+            futures.add(loader.load(id));
+        }
+        for (CompletableFuture<User> f : futures) {
+            try {
+                f.get(1, TimeUnit.SECONDS);
+                Assert.fail("failure expected");
+            } catch (ExecutionException e) {
+                Assert.assertSame(failure, e.getCause());
+            }
+        }
+        Assert.assertEquals(1, calls.size());
+
+        // 同步调用原样抛出服务的运行时异常
+        try {
+            loader.get(7L);
+            Assert.fail("failure expected");
+        } catch (IllegalArgumentException e) {
+            Assert.assertSame(failure, e);
+        }
+    }
+
+    @Test
+    public void testErrorPropagatesToAllCallers() throws Exception {
+        failure = new OutOfMemoryError("rpc");
+        loader(50, 100, 3000);
+        List<CompletableFuture<User>> futures = new ArrayList<CompletableFuture<User>>();
+        for (long id = 1; id <= 5; id++) {
+            futures.add(loader.load(id));
+        }
+        // Error也要结束同一批次的所有调用方，而不是让它们等到超时
+        for (CompletableFuture<User> f : futures) {
+            try {
+                f.get(1, TimeUnit.SECONDS);
+                Assert.fail("failure expected");
+            } catch (ExecutionException e) {
+                Assert.assertSame(failure, e.getCause());
+            }
+        }
+
+        try {
+            loader.get(7L);
+            Assert.fail("failure expected");
+        } catch (IllegalStateException e) {
+            Assert.assertSame(failure, e.getCause());
+        }
+    }
+}